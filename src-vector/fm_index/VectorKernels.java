@@ -0,0 +1,92 @@
+package fm_index;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Written by the group.
+ * Kernels with the incubating Vector API, one vector of the widest size
+ * the CPU supports per iteration and the plain loop for what is left.
+ * Only loaded by Kernels when the jdk.incubator.vector module is there,
+ * see Kernels.
+ */
+class VectorKernels extends Kernels {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    // A histogram compares every vector with every code, so larger
+    // alphabets are counted by the plain loop
+    static final int MAX_VECTOR_ALPHABET = 16;
+
+    VectorKernels() {
+        if (BYTES.vectorBitSize() < 128) {
+            throw new UnsupportedOperationException("Vectors of " + BYTES.vectorBitSize() + " bits are too small");
+        }
+    }
+
+    @Override
+    String name() {
+        return "vector " + BYTES.vectorBitSize() + " bit";
+    }
+
+    @Override
+    void histogram(byte[] codes, int from, int to, int[] counts) {
+        if (counts.length > MAX_VECTOR_ALPHABET) {
+            super.histogram(codes, from, to, counts);
+            return;
+        }
+        int i = from;
+        int bound = from + BYTES.loopBound(to - from);
+        // The last code is whatever the others leave
+        int last = counts.length - 1;
+        int others = 0;
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector vector = ByteVector.fromArray(BYTES, codes, i);
+            for (int code = 0; code < last; code++) {
+                int count = vector.eq((byte) code).trueCount();
+                counts[code] += count;
+                others += count;
+            }
+        }
+        counts[last] += (i - from) - others;
+        super.histogram(codes, i, to, counts);
+    }
+
+    @Override
+    void greaterOrEqual(byte[] codes, int from, int to, int split, boolean[] out) {
+        int i = from;
+        int bound = from + BYTES.loopBound(to - from);
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector.fromArray(BYTES, codes, i)
+                    .compare(VectorOperators.UNSIGNED_GE, (byte) split)
+                    .intoArray(out, i);
+        }
+        super.greaterOrEqual(codes, i, to, split, out);
+    }
+
+    @Override
+    void greaterOrEqual(char[] s, int from, int to, char split, boolean[] out) {
+        int i = from;
+        int bound = from + SHORTS.loopBound(to - from);
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector.fromCharArray(SHORTS, s, i)
+                    .compare(VectorOperators.UNSIGNED_GE, (short) split)
+                    .intoArray(out, i);
+        }
+        super.greaterOrEqual(s, i, to, split, out);
+    }
+
+    @Override
+    int countFalse(boolean[] bits, int from, int to) {
+        int i = from;
+        int bound = from + BYTES.loopBound(to - from);
+        int trues = 0;
+        for (; i < bound; i += BYTES.length()) {
+            trues += VectorMask.fromArray(BYTES, bits, i).trueCount();
+        }
+        return (i - from) - trues + super.countFalse(bits, i, to);
+    }
+}
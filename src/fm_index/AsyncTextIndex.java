@@ -0,0 +1,278 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Written by the group.
+ * Non-blocking front end of a TextIndex. searchAsync and locateAsync return
+ * at once with a CompletableFuture; the queries run on a fixed set of
+ * worker threads owned by this object, never on the caller's thread.
+ *
+ * Queries wait in a bounded queue. A worker takes the oldest one and
+ * whatever else is queued behind it, up to the batch size, and waits at
+ * most the linger time (counted from when the oldest one was queued) for
+ * more to arrive, so queries that come close together are answered as one
+ * batch. Identical queries in a batch are answered once.
+ *
+ * When the queue is full a new query is not queued: its future fails with
+ * RejectedExecutionException right away, so a burst shows up as fast
+ * rejections the caller can back off from instead of a growing queue and
+ * growing latency for everyone.
+ *
+ * The futures are completed on the worker threads. Dependent stages added
+ * with thenApply and the like run there too and hold up the next batch,
+ * so anything slow should use the *Async variants with its own executor.
+ */
+public class AsyncTextIndex implements AutoCloseable {
+
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    static final int DEFAULT_BATCH_SIZE = 64;
+    static final long DEFAULT_LINGER_MICROS = 0;
+
+    /**
+     * A query waiting for a worker
+     */
+    private static class Request {
+        final String key;
+        final Supplier<Object> job;
+        final long queued = System.nanoTime();
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Request(String key, Supplier<Object> job) {
+            this.key = key;
+            this.job = job;
+        }
+    }
+
+    private final TextIndex index;
+    private final BlockingQueue<Request> queue;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread[] workers;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean closed;
+
+    public AsyncTextIndex(TextIndex index) {
+        this(index, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_BATCH_SIZE, DEFAULT_LINGER_MICROS);
+    }
+
+    /**
+     * @param index
+     * @param numberWorkers Threads that answer queued queries
+     * @param queueCapacity Queries that can wait for a worker
+     * @param batchSize Most queries a worker takes at once
+     * @param lingerMicros How long a worker waits for a batch to fill, 0 to
+     *                     take only what is already queued
+     */
+    public AsyncTextIndex(TextIndex index, int numberWorkers, int queueCapacity, int batchSize, long lingerMicros) {
+        if (numberWorkers < 1 || queueCapacity < 1 || batchSize < 1 || lingerMicros < 0) {
+            throw new IllegalArgumentException("Workers, queue capacity and batch size must be positive, linger not negative");
+        }
+        this.index = index;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.workers = new Thread[numberWorkers];
+        for (int i = 0; i < numberWorkers; i++) {
+            workers[i] = new Thread(this::work, "async-index-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * TextIndex.search on a worker thread
+     * @param query
+     * @return The range of matching rows, see TextIndex.search
+     */
+    public CompletableFuture<int[]> searchAsync(String query) {
+        return submit("S" + query, () -> index.search(query), 0);
+    }
+
+    /**
+     * Number of occurrences of 'query', from searchAsync
+     * @param query
+     * @return
+     */
+    public CompletableFuture<Integer> countAsync(String query) {
+        return searchAsync(query).thenApply(range -> range[1] - range[0] + 1);
+    }
+
+    /**
+     * TextIndex.locate on a worker thread
+     * @param query
+     * @return The text positions of every occurrence, see TextIndex.locate
+     */
+    public CompletableFuture<int[]> locateAsync(String query) {
+        return submit("L" + query, () -> index.locate(query), 0);
+    }
+
+    /**
+     * Queue any job on the workers. Jobs with the same key must have the
+     * same answer, since only one of them runs when they share a batch.
+     * @param key
+     * @param job
+     * @param timeoutMillis How long to wait for room in the queue, 0 to fail
+     *                      at once when it is full. Only callers that may
+     *                      block, such as virtual threads, should wait.
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> submit(String key, Supplier<T> job, long timeoutMillis) {
+        Request request = new Request(key, (Supplier<Object>) job);
+        boolean queued;
+        try {
+            queued = !closed && (timeoutMillis == 0 ? queue.offer(request)
+                    : queue.offer(request, timeoutMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            rejected.incrementAndGet();
+            request.result.completeExceptionally(closed
+                    ? new IllegalStateException("The index is closed")
+                    : new RejectedExecutionException("The query queue is full"));
+        } else if (closed) {
+            // close() may have drained the queue before this request got in
+            failPending();
+        }
+        return (CompletableFuture<T>) request.result;
+    }
+
+    /**
+     * Worker loop: wait for a query, collect a batch and answer it
+     */
+    private void work() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        HashMap<String, Object> answers = new HashMap<>();
+        while (!closed) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException ex) {
+                // Requests already taken are failed like the queued ones
+                failAll(batch);
+                return;
+            }
+            batches.incrementAndGet();
+
+            for (Request request : batch) {
+                Object answer = answers.get(request.key);
+                if (answer != null) {
+                    deduplicated.incrementAndGet();
+                    // Every caller gets its own array, they may sort it
+                    if (answer instanceof int[]) {
+                        answer = ((int[]) answer).clone();
+                    }
+                } else {
+                    try {
+                        answer = request.job.get();
+                    } catch (Throwable ex) {
+                        // Errors too, such as a StackOverflowError: the worker
+                        // must survive them, or every queued future would
+                        // never complete
+                        answer = ex;
+                    }
+                    answers.put(request.key, answer);
+                }
+                latency.record(System.nanoTime() - request.queued);
+                if (answer instanceof Throwable) {
+                    request.result.completeExceptionally((Throwable) answer);
+                } else {
+                    request.result.complete(answer);
+                }
+            }
+            batch.clear();
+            answers.clear();
+        }
+    }
+
+    private void collectBatch(List<Request> batch) throws InterruptedException {
+        Request first = queue.take();
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        long deadline = first.queued + lingerNanos;
+        while (batch.size() < batchSize) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return;
+            }
+            Request next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void failPending() {
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        failAll(pending);
+    }
+
+    private static void failAll(List<Request> requests) {
+        for (Request request : requests) {
+            request.result.completeExceptionally(new IllegalStateException("The index is closed"));
+        }
+    }
+
+    /**
+     * Time from queueing to answering, of every answered query
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    public long deduplicated() {
+        return deduplicated.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Latency percentiles and queue counters on one line
+     * @return
+     */
+    public String stats() {
+        return String.format("%s batches=%d deduplicated=%d rejected=%d queued=%d",
+                latency.summary(), batches(), deduplicated(), rejected(), queued());
+    }
+
+    /**
+     * Stop the workers. Queries that were not answered yet fail with
+     * IllegalStateException.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        failPending();
+    }
+}
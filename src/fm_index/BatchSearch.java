@@ -0,0 +1,177 @@
+package fm_index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Written by the group.
+ * Backward search of many patterns at once over one FMIndex. Backward
+ * search reads a pattern from its end, so patterns sharing a suffix go
+ * through the same ranges until they differ, and searching them one by
+ * one repeats those steps for each of them.
+ *
+ * The patterns are walked as the trie of their reversed strings, depth
+ * first: sorted by reversed string, consecutive patterns share a path
+ * from the root as long as their longest common suffix, so the ranges of
+ * the previous pattern are kept by depth and only the steps below that
+ * depth are computed. The trie is never built, the sorted order and a
+ * stack of ranges are enough. A range that becomes empty stays empty
+ * deeper down, so every pattern below it is answered without ranks.
+ *
+ * Each step is two ranks of the wavelet tree, as in FMIndex.search. The
+ * result counts the ranks of the batch and the ranks the same patterns
+ * take with one FMIndex.search each.
+ */
+public class BatchSearch {
+
+    FMIndex index;
+
+    public BatchSearch(FMIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Written by the group.
+     * Ranges of a batch of patterns and the rank calls they took
+     */
+    public static class Result {
+        // ranges[i] is the range of pattern i, as FMIndex.search returns it
+        int[][] ranges;
+        long rankCalls;
+        long independentRankCalls;
+
+        Result(int patterns) {
+            ranges = new int[patterns][];
+        }
+
+        /**
+         * @param i Index of the pattern in the batch
+         * @return The 1-based range {s, e} of matching rows, or {1, 0} if there is no match
+         */
+        public int[] range(int i) {
+            return ranges[i];
+        }
+
+        /**
+         * Number of occurrences of pattern i
+         * @param i
+         * @return
+         */
+        public int count(int i) {
+            return Math.max(0, ranges[i][1] - ranges[i][0] + 1);
+        }
+
+        /**
+         * Rank calls of the batch
+         */
+        public long rankCalls() {
+            return rankCalls;
+        }
+
+        /**
+         * Rank calls of one FMIndex.search per pattern
+         */
+        public long independentRankCalls() {
+            return independentRankCalls;
+        }
+
+        /**
+         * Rank calls saved by sharing suffixes
+         */
+        public long saved() {
+            return independentRankCalls - rankCalls;
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Search every pattern of the batch
+     * @param patterns
+     * @return The ranges in the order of 'patterns'
+     */
+    public Result search(List<String> patterns) {
+        return search(patterns.toArray(new String[0]));
+    }
+
+    /**
+     * Written by the group.
+     * Search every pattern of the batch
+     * @param patterns
+     * @return The ranges in the order of 'patterns'
+     */
+    public Result search(String[] patterns) {
+        Result result = new Result(patterns.length);
+        Integer[] order = new Integer[patterns.length];
+        int maxLength = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            order[i] = i;
+            maxLength = Math.max(maxLength, patterns[i].length());
+        }
+        Arrays.sort(order, (a, b) -> compareReversed(patterns[a], patterns[b]));
+
+        // Range of the path of the previous pattern at every depth; the
+        // root is the whole BWT. missing[d] is set when the character of
+        // depth d is not in the text, which search rejects without ranks.
+        int[] starts = new int[maxLength + 1];
+        int[] ends = new int[maxLength + 1];
+        boolean[] missing = new boolean[maxLength + 1];
+        starts[0] = 1;
+        ends[0] = index.n;
+        // Deepest valid entry of the stack
+        int top = 0;
+        String previous = "";
+        for (int i : order) {
+            String pattern = patterns[i];
+            int depth = Math.min(top, commonSuffix(previous, pattern));
+            int s = starts[depth];
+            int e = ends[depth];
+            while (depth < pattern.length() && s <= e) {
+                char q = pattern.charAt(pattern.length() - 1 - depth);
+                depth++;
+                Integer smaller = index.c.occurrence.get(q);
+                if (smaller == null) {
+                    missing[depth] = true;
+                    s = 1;
+                    e = 0;
+                } else {
+                    missing[depth] = false;
+                    s = smaller + index.wt.rank(q, s - 1) + 1;
+                    e = smaller + index.wt.rank(q, e);
+                    result.rankCalls += 2;
+                }
+                starts[depth] = s;
+                ends[depth] = e;
+            }
+            top = depth;
+            previous = pattern;
+            // One search of this pattern alone stops at the same depth
+            result.independentRankCalls += 2 * (missing[depth] && depth > 0 ? depth - 1 : depth);
+            result.ranges[i] = s <= e ? new int[]{s, e} : new int[]{1, 0};
+        }
+        return result;
+    }
+
+    /**
+     * Order of the reversed strings, which is the depth first order of
+     * the trie of reversed patterns
+     */
+    static int compareReversed(String a, String b) {
+        int common = commonSuffix(a, b);
+        if (common == a.length() || common == b.length()) {
+            return a.length() - b.length();
+        }
+        return a.charAt(a.length() - 1 - common) - b.charAt(b.length() - 1 - common);
+    }
+
+    /**
+     * Length of the longest common suffix of 'a' and 'b'
+     */
+    static int commonSuffix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int common = 0;
+        while (common < length && a.charAt(a.length() - 1 - common) == b.charAt(b.length() - 1 - common)) {
+            common++;
+        }
+        return common;
+    }
+}
@@ -2,7 +2,7 @@ package fm_index;
 
 
 
-public class Block {
+public class Block implements RankSelectBitVector {
 
     private boolean bitvector[];
     private int blockSize;
@@ -15,8 +15,24 @@ public class Block {
     // which is the total number of positions up until the
     // checkpoint minus the number of occurrences of the
     // "zero" character.
+    // They stay a plain int[] rather than a PackedArray: a Block covers
+    // a boolean[], so every count fits in an int, and texts past 2^31
+    // characters are split by ShardedIndex into shards with their own
+    // blocks. The chunks of the parallel construction also write
+    // neighbouring checkpoints at once, which packed values sharing a
+    // long could not do without locking.
     private int checkpoints[];
 
+    // Sampled select directories. zeroSamples[j] is the position of
+    // the (j*SELECT_SAMPLE_RATE + 1)-th "zero" in the bitvector, and
+    // oneSamples[j] the same for the "ones". A select query starts
+    // from the nearest sample and only has to cover the stretch up
+    // to the next one, using the rank checkpoints to skip whole blocks.
+    static final int SELECT_SAMPLE_RATE = 64;
+    private int zeroSamples[];
+    private int oneSamples[];
+    private int totalZeros;
+
     public Block(boolean[] bitvector, int blockSize) {
         this.bitvector = bitvector;
         this.blockSize = blockSize;
@@ -26,79 +42,243 @@ public class Block {
         } else {
             int numberBlocks = bitvector.length / blockSize;
 //        System.out.println(String.format("Number of blocks: %d", numberBlocks));
-            this.checkpoints = new int[numberBlocks];
-
             // We are not going to keep the counts for the last
             // section of the bitvector, meaning for indexes that
             // are greater than numberBlocks*blockSize, we will
             // have to compute the counts starting from the last
             // position of the checkpoints vector.
-            int zeroCount = 0;
-            for (int i = 0; i < bitvector.length; i++) {
-//            System.out.println(String.format("Analysing position %d", i));
-                if (bitvector[i] == false) {
-                    zeroCount += 1;
-//                System.out.println("\tIncrementing zero count");
+            this.checkpoints = new int[numberBlocks];
+        }
+
+        // Large bitvectors are processed in chunks of whole blocks. Every
+        // chunk first counts its own zeros and stores checkpoints relative
+        // to its start; once we know how many zeros come before each chunk,
+        // the chunks shift their checkpoints and fill the select samples.
+        int chunkSize = ParallelRanges.CHUNK_SIZE;
+        if (!this.useSimpleScan) {
+            chunkSize = Math.max(1, chunkSize / blockSize) * blockSize;
+        }
+        int numberChunks = ParallelRanges.numberChunks(bitvector.length, chunkSize);
+        int size = chunkSize;
+        int[] chunkZeros = new int[numberChunks + 1];
+        ParallelRanges.forEachChunk(numberChunks, chunk -> countChunk(chunk, size, chunkZeros));
+
+        // chunkZeros[c] becomes the number of zeros before chunk c
+        int zeros = 0;
+        for (int chunk = 0; chunk <= numberChunks; chunk++) {
+            int inChunk = chunkZeros[chunk];
+            chunkZeros[chunk] = zeros;
+            zeros += inChunk;
+        }
+        this.totalZeros = zeros;
+        int ones = bitvector.length - zeros;
+        this.zeroSamples = new int[(zeros + SELECT_SAMPLE_RATE - 1) / SELECT_SAMPLE_RATE];
+        this.oneSamples = new int[(ones + SELECT_SAMPLE_RATE - 1) / SELECT_SAMPLE_RATE];
+        ParallelRanges.forEachChunk(numberChunks, chunk -> finishChunk(chunk, size, chunkZeros[chunk]));
+    }
+
+    /**
+     * Count the zeros of one chunk and store its checkpoints
+     * relative to the start of the chunk.
+     */
+    private void countChunk(int chunk, int chunkSize, int[] chunkZeros) {
+        int start = chunk * chunkSize;
+        int end = Math.min(start + chunkSize, bitvector.length);
+        if (useSimpleScan) {
+            chunkZeros[chunk] = Kernels.INSTANCE.countFalse(bitvector, start, end);
+            return;
+        }
+        // Chunks hold whole blocks; every full block gets the count of
+        // the chunk up to its end as checkpoint
+        int zeroCount = 0;
+        for (int blockStart = start; blockStart < end; blockStart += blockSize) {
+            int blockEnd = Math.min(blockStart + blockSize, end);
+            zeroCount += Kernels.INSTANCE.countFalse(bitvector, blockStart, blockEnd);
+            if (blockEnd - blockStart == blockSize) {
+                checkpoints[blockStart / blockSize] = zeroCount;
+            }
+        }
+        chunkZeros[chunk] = zeroCount;
+    }
+
+    /**
+     * Shift the checkpoints of one chunk by the zeros that come before it
+     * and record the select samples that fall inside it.
+     */
+    private void finishChunk(int chunk, int chunkSize, int zerosBefore) {
+        int start = chunk * chunkSize;
+        int end = Math.min(start + chunkSize, bitvector.length);
+        if (!useSimpleScan) {
+            for (int b = start / blockSize; b < end / blockSize; b++) {
+                checkpoints[b] += zerosBefore;
+            }
+        }
+
+        int zeroCount = zerosBefore;
+        int oneCount = start - zerosBefore;
+        for (int i = start; i < end; i++) {
+            if (bitvector[i]) {
+                if (oneCount % SELECT_SAMPLE_RATE == 0) {
+                    oneSamples[oneCount / SELECT_SAMPLE_RATE] = i;
                 }
-                // If we have analyzed (i+1) positions of the bit vector,
-                // we store the counts in the checkpoints array
-                if ((i+1) % blockSize == 0) {
-                    int checkpointIndex = i / blockSize;
-                    checkpoints[checkpointIndex] = zeroCount;
-//                System.out.println(String.format("\tSaved zero count %d to position %d of checkpoints vector", zeroCount, checkpointIndex));
+                oneCount += 1;
+            } else {
+                if (zeroCount % SELECT_SAMPLE_RATE == 0) {
+                    zeroSamples[zeroCount / SELECT_SAMPLE_RATE] = i;
                 }
+                zeroCount += 1;
             }
         }
     }
 
+    @Override
+    public boolean get(int index) {
+        return this.bitvector[index];
+    }
+
+    @Override
+    public int length() {
+        return this.bitvector.length;
+    }
+
+    /**
+     * One byte per boolean plus the checkpoints and select samples.
+     */
+    @Override
+    public long sizeInBytes() {
+        return MemoryReport.arrayBytes(this.bitvector.length, 1) + indexBytes();
+    }
+
+    @Override
+    public long indexBytes() {
+        // bitvector, checkpoints and samples; blockSize, totalZeros and useSimpleScan
+        long size = MemoryReport.objectBytes(4, 9);
+        if (this.checkpoints != null) {
+            size += MemoryReport.arrayBytes(this.checkpoints.length, 4);
+        }
+        size += MemoryReport.arrayBytes(this.zeroSamples.length, 4);
+        size += MemoryReport.arrayBytes(this.oneSamples.length, 4);
+        return size;
+    }
+
+    @Override
     public int getCount(int index, boolean encoding) {
-//        System.out.println("Block.getCount()");
-        if (this.useSimpleScan) {
-//            System.out.println("Block.getCount() -> useSimpleScan");
-            int count = 0;
-            for (int i = 0; i < index; i++) {
-                if (this.bitvector[i] == encoding) {
-                    count += 1;
+        // Nothing comes before the first position. The backward search
+        // asks for index -1 on its first step, which would otherwise give
+        // a negative "one" count when blockSize is 1.
+        if (index <= 0) {
+            return 0;
+        }
+        if (index >= this.bitvector.length) {
+            return encoding ? this.bitvector.length - this.totalZeros : this.totalZeros;
+        }
+
+        // Positions whose zero count we know: the start, every checkpoint
+        // and the end. We scan from whichever of the two around 'index' is
+        // nearer, forwards from the previous one or backwards from the
+        // next one, so at most half a block is scanned. Without checkpoints
+        // that is half of the bitvector instead of all of it.
+        int previous = 0;
+        int next = this.bitvector.length;
+        if (!this.useSimpleScan) {
+            previous = (index / blockSize) * blockSize;
+            if (previous + blockSize <= this.checkpoints.length * blockSize) {
+                next = previous + blockSize;
+            }
+        }
+
+        int zeroCount;
+        if (index - previous <= next - index) {
+            zeroCount = zerosBefore(previous) + Kernels.INSTANCE.countFalse(this.bitvector, previous, index);
+        } else {
+            zeroCount = zerosBefore(next) - Kernels.INSTANCE.countFalse(this.bitvector, index, next);
+        }
+
+        // The number of "ones" is the complement of the "zeros"
+        return encoding ? index - zeroCount : zeroCount;
+    }
+
+    /**
+     * Number of zeros before 'anchor', which is 0, the length of the
+     * bitvector or the end of a checkpointed block.
+     */
+    private int zerosBefore(int anchor) {
+        if (anchor == 0) {
+            return 0;
+        }
+        if (anchor == this.bitvector.length) {
+            return this.totalZeros;
+        }
+        return this.checkpoints[anchor / blockSize - 1];
+    }
+
+    /**
+     * Written by the group.
+     * Position of the k-th (1-based) occurrence of 'encoding' in the
+     * bitvector, or -1 if there are fewer than k occurrences.
+     * @param encoding The bit value to look for
+     * @param k The occurrence number, starting at 1
+     * @return
+     */
+    @Override
+    public int select(boolean encoding, int k) {
+        int[] samples = encoding ? this.oneSamples : this.zeroSamples;
+        if (k <= 0) {
+            return -1;
+        }
+        int sampleIndex = (k - 1) / SELECT_SAMPLE_RATE;
+        if (sampleIndex >= samples.length) {
+            return -1;
+        }
+
+        // The sampled position holds occurrence number
+        // sampleIndex*SELECT_SAMPLE_RATE + 1, so that many minus one
+        // occurrences come strictly before it.
+        int start = samples[sampleIndex];
+        int count = sampleIndex * SELECT_SAMPLE_RATE;
+        int end = sampleIndex + 1 < samples.length ? samples[sampleIndex + 1] : this.bitvector.length;
+
+        // Skip whole blocks between the two samples with a binary search
+        // over the checkpoints. We look for the last checkpoint that
+        // still has fewer than k occurrences before it.
+        if (!this.useSimpleScan) {
+            int low = start / blockSize;
+            int high = Math.min(end / blockSize, this.checkpoints.length);
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (checkpointCount(mid - 1, encoding) < k) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
                 }
             }
-            return count;
-        }
-//        System.out.println("Block.getCount() -> not useSimpleScan");
-        int checkpointIndex = index / blockSize - 1;
-//        System.out.println(String.format("Checkpoint index is %d", checkpointIndex));
-
-        // Naive approach: get the checkpoint of the last
-        // multiple and go from there. Not using the "nearest"
-        // checkpoint for now. That would be computed by calculating
-        // the distances from both the previous and the next checkpoints
-        // to the index that is being queried.
-        int checkpointCount = 0;
-        // We also have to check if the queried index is before the first
-        // checkpoint to avoid array indexing problems. For example,
-        // the checkpoint index for query index = 1 when block size > 2
-        // would be -1, because 1 / 2 - 1 is going to result to -1.
-        if (checkpointIndex >= 0) {
-            checkpointCount = this.checkpoints[checkpointIndex];
-        }
-        // If we are querying the "zero" count, then we are done
-        // If not, we have to transform this to the "one" count.
-        if (encoding == true) {
-            // Total number of positions in the bitvector up until the checkpoint
-            // minus the number of occurrences of "zero".
-            checkpointCount = (checkpointIndex+1)*this.blockSize - checkpointCount;
-        }
-//        System.out.println(String.format("Checkpoint count: %d", checkpointCount));
-        int startingIndex = (checkpointIndex+1)*this.blockSize;
-//        System.out.println(String.format("Starting index: %d", startingIndex));
-        for (int i = startingIndex; i < index; i++) {
-//            System.out.println(String.format("Evaluating index %d", i));
+            if (low * blockSize > start) {
+                start = low * blockSize;
+                count = checkpointCount(low - 1, encoding);
+            }
+        }
+
+        for (int i = start; i < end; i++) {
             if (this.bitvector[i] == encoding) {
-//                System.out.println("Adding 1 to checkpoint count");
-                checkpointCount += 1;
+                count += 1;
+                if (count == k) {
+                    return i;
+                }
             }
         }
+        return -1;
+    }
 
-        return checkpointCount;
+    /**
+     * Number of occurrences of 'encoding' in the blocks up to and
+     * including checkpoint 'checkpointIndex'.
+     */
+    private int checkpointCount(int checkpointIndex, boolean encoding) {
+        int zeroCount = this.checkpoints[checkpointIndex];
+        if (encoding) {
+            return (checkpointIndex+1)*this.blockSize - zeroCount;
+        }
+        return zeroCount;
     }
 
     public void printCheckpoints() {
@@ -0,0 +1,151 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * Index of both strands of a DNA text, so a query is counted and located
+ * on both with a single backward search instead of one search for the
+ * query and one for its reverse complement. The FMIndex is built over
+ *   text SEPARATOR reverseComplement(text) TERMINATOR
+ * An occurrence of the query in the second half is an occurrence of its
+ * reverse complement in the text, and locate turns it into the position
+ * where that reverse complement starts. This costs one index of twice the
+ * length, against two searches per query.
+ *
+ * The separator is the terminator itself, so the wavelet tree has no more
+ * levels than the one of the text alone. Rows preceded by a terminator
+ * are always sampled, so locate never walks from one half into the other.
+ */
+public class BothStrandsIndex {
+
+    // Between the text and its reverse complement
+    static final char SEPARATOR = FMIndex.TERMINATOR;
+
+    FMIndex index;
+    // Length of the text, without terminator
+    int length;
+
+    /**
+     * @param dna The text, with or without the terminator at the end
+     * @param blockSize
+     * @throws IllegalArgumentException If the text contains a terminator before its end
+     */
+    public BothStrandsIndex(String dna, int blockSize) {
+        if (!dna.isEmpty() && dna.charAt(dna.length() - 1) == FMIndex.TERMINATOR) {
+            dna = dna.substring(0, dna.length() - 1);
+        }
+        if (dna.indexOf(FMIndex.TERMINATOR) >= 0) {
+            throw new IllegalArgumentException("The text cannot contain '" + FMIndex.TERMINATOR
+                    + "' before its end");
+        }
+        this.length = dna.length();
+        this.index = new FMIndex(dna + SEPARATOR + reverseComplement(dna) + FMIndex.TERMINATOR, blockSize);
+    }
+
+    /**
+     * Complement of a nucleotide, keeping case. IUPAC ambiguity codes map
+     * to the code of the complementary set; other characters map to
+     * themselves.
+     * @param c
+     * @return
+     */
+    static char complement(char c) {
+        switch (c) {
+            case 'A': return 'T';
+            case 'T': return 'A';
+            case 'U': return 'A';
+            case 'C': return 'G';
+            case 'G': return 'C';
+            case 'R': return 'Y';
+            case 'Y': return 'R';
+            case 'K': return 'M';
+            case 'M': return 'K';
+            case 'B': return 'V';
+            case 'V': return 'B';
+            case 'D': return 'H';
+            case 'H': return 'D';
+            case 'a': return 't';
+            case 't': return 'a';
+            case 'u': return 'a';
+            case 'c': return 'g';
+            case 'g': return 'c';
+            default: return c;
+        }
+    }
+
+    /**
+     * @param dna
+     * @return The complement of 'dna', read backwards
+     */
+    public static String reverseComplement(String dna) {
+        char[] result = new char[dna.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = complement(dna.charAt(dna.length() - 1 - i));
+        }
+        return new String(result);
+    }
+
+    /**
+     * Range of rows of 'query' in the index of both strands
+     * @param query
+     * @return The 1-based range {s, e}, or {1, 0} if there is no match
+     */
+    public int[] search(String query) {
+        checkQuery(query);
+        return index.search(query);
+    }
+
+    /**
+     * Occurrences of 'query' on both strands: those of the query in the
+     * text plus those of its reverse complement. A query that is its own
+     * reverse complement counts twice at every position, once per strand.
+     * @param query
+     * @return
+     */
+    public int count(String query) {
+        int[] range = search(query);
+        return Math.max(0, range[1] - range[0] + 1);
+    }
+
+    /**
+     * Positions in the text of the occurrences of 'query' on both strands
+     * @param query
+     * @return {forward, reverse}: where the query starts, and where its
+     *         reverse complement starts, in suffix array order
+     */
+    public int[][] locate(String query) {
+        checkQuery(query);
+        int[] positions = index.locate(query);
+        int reverse = 0;
+        for (int position : positions) {
+            if (position > length) {
+                reverse++;
+            }
+        }
+        int[] forwardPositions = new int[positions.length - reverse];
+        int[] reversePositions = new int[reverse];
+        int f = 0;
+        int r = 0;
+        for (int position : positions) {
+            if (position > length) {
+                // query = reverseComplement(text)[q, q + m), which is the
+                // reverse complement of text[length - q - m, length - q)
+                int q = position - length - 1;
+                reversePositions[r++] = length - q - query.length();
+            } else {
+                forwardPositions[f++] = position;
+            }
+        }
+        return new int[][]{forwardPositions, reversePositions};
+    }
+
+    private static void checkQuery(String query) {
+        if (query.isEmpty() || query.indexOf(FMIndex.TERMINATOR) >= 0) {
+            throw new IllegalArgumentException("The query must be non empty, without '"
+                    + FMIndex.TERMINATOR + "'");
+        }
+    }
+
+    public MemoryReport memoryReport() {
+        return index.memoryReport();
+    }
+}
@@ -0,0 +1,130 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * Text over at most 256 distinct characters, stored as one byte per
+ * character instead of the two of a char[] or the four of an int[]. Every
+ * character is replaced by its code, its rank in the sorted alphabet, so
+ * codes compare like the characters they stand for. Index construction
+ * works on this form when the alphabet is small enough.
+ */
+public class ByteText implements CharSequence {
+
+    static final int MAX_ALPHABET = 256;
+
+    // Codes read as unsigned, 0 to alphabet.length - 1
+    final byte[] codes;
+    // Character of every code
+    final char[] alphabet;
+
+    private ByteText(byte[] codes, char[] alphabet) {
+        this.codes = codes;
+        this.alphabet = alphabet;
+    }
+
+    /**
+     * Whether 'text' has at most MAX_ALPHABET distinct characters
+     * @param text
+     * @return
+     */
+    public static boolean fits(CharSequence text) {
+        return alphabetOf(text).length <= MAX_ALPHABET;
+    }
+
+    /**
+     * @param text
+     * @return
+     * @throws IllegalArgumentException If 'text' has more than MAX_ALPHABET distinct characters
+     */
+    public static ByteText of(CharSequence text) {
+        char[] alphabet = alphabetOf(text);
+        if (alphabet.length > MAX_ALPHABET) {
+            throw new IllegalArgumentException("The text has " + alphabet.length
+                    + " distinct characters, at most " + MAX_ALPHABET + " fit in a byte");
+        }
+        byte[] codeOf = new byte[Character.MAX_VALUE + 1];
+        for (int code = 0; code < alphabet.length; code++) {
+            codeOf[alphabet[code]] = (byte) code;
+        }
+        byte[] codes = new byte[text.length()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = codeOf[text.charAt(i)];
+        }
+        return new ByteText(codes, alphabet);
+    }
+
+    private static char[] alphabetOf(CharSequence text) {
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!seen[c]) {
+                seen[c] = true;
+                count++;
+            }
+        }
+        char[] alphabet = new char[count];
+        int index = 0;
+        for (int c = 0; c < seen.length; c++) {
+            if (seen[c]) {
+                alphabet[index++] = (char) c;
+            }
+        }
+        return alphabet;
+    }
+
+    int code(int index) {
+        return codes[index] & 0xFF;
+    }
+
+    /**
+     * Number of occurrences of every code
+     * @return
+     */
+    int[] counts() {
+        int[] counts = new int[alphabet.length];
+        Kernels.INSTANCE.histogram(codes, 0, codes.length, counts);
+        return counts;
+    }
+
+    /**
+     * BW Text of this text, also one byte per character
+     * @param suffixArray Suffix array of this text
+     * @return
+     */
+    ByteText bwt(int[] suffixArray) {
+        byte[] bwt = new byte[suffixArray.length];
+        for (int i = 0; i < suffixArray.length; i++) {
+            int index = suffixArray[i] - 1;
+            if (index == -1) {
+                index = suffixArray.length - 1;
+            }
+            bwt[i] = codes[index];
+        }
+        return new ByteText(bwt, alphabet);
+    }
+
+    @Override
+    public int length() {
+        return codes.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return alphabet[codes[index] & 0xFF];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            builder.append(charAt(i));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
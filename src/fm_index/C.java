@@ -16,21 +16,39 @@ public class C {
         generateC();
     }
 
-    private void generateC() {
-        // Create alphabet string
+    /**
+     * Written by the group.
+     * C table from the number of occurrences of every character,
+     * without keeping the text
+     * @param alphabet Sorted distinct characters
+     * @param counts Occurrences of alphabet[i]
+     */
+    C(char[] alphabet, int[] counts) {
         occurrence = new HashMap<>();
-        for (int i = 0; i < s.length(); i++) {
-            occurrence.put(s.charAt(i), 0);
+        int smaller = 0;
+        for (int i = 0; i < alphabet.length; i++) {
+            occurrence.put(alphabet[i], smaller);
+            smaller += counts[i];
         }
-        
+    }
+
+    /**
+     * Written by the group.
+     * Count every character in one pass, then the characters smaller than
+     * each one are the sum of the counts before it, instead of one map
+     * update per character and alphabet entry.
+     */
+    private void generateC() {
+        int[] counts = new int[Character.MAX_VALUE + 1];
         for (int i = 0; i < s.length(); i++) {
-            
-            Character[] keys = occurrence.keySet().toArray(new Character[0]);
-            
-            for (int j = 0; j < keys.length; j++) {
-                if(s.charAt(i) < keys[j]){
-                    occurrence.put(keys[j], occurrence.get(keys[j].toString().charAt(0)) + 1);
-                }
+            counts[s.charAt(i)]++;
+        }
+        occurrence = new HashMap<>();
+        int smaller = 0;
+        for (int c = 0; c < counts.length; c++) {
+            if (counts[c] > 0) {
+                occurrence.put((char) c, smaller);
+                smaller += counts[c];
             }
         }
     }
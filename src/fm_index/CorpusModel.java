@@ -0,0 +1,382 @@
+package fm_index;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Written by the group.
+ * Models of synthetic texts for GenerateData. A model writes characters
+ * into an Output until it is full, so texts of any length are generated
+ * in constant memory (the versions model keeps one version). Every model
+ * draws from one SplittableRandom seeded by the caller, so the same seed
+ * and options always give the same text.
+ *
+ * Characters are single bytes, read back as ISO-8859-1 like the other
+ * tools do, and never the terminator or a newline.
+ */
+public abstract class CorpusModel {
+
+    static final String DNA = "ACGT";
+
+    /**
+     * Bounded byte sink: writes past the limit are dropped, so a model
+     * can always emit a whole repeat or word and check isFull() after.
+     */
+    static class Output {
+        final OutputStream stream;
+        final byte[] buffer = new byte[1 << 16];
+        int used;
+        long remaining;
+
+        Output(OutputStream stream, long length) {
+            this.stream = stream;
+            this.remaining = length;
+        }
+
+        boolean isFull() {
+            return remaining == 0;
+        }
+
+        void put(int b) throws IOException {
+            if (remaining == 0) {
+                return;
+            }
+            if (used == buffer.length) {
+                flush();
+            }
+            buffer[used++] = (byte) b;
+            remaining--;
+        }
+
+        void put(byte[] bytes, int from, int to) throws IOException {
+            for (int i = from; i < to && remaining > 0; i++) {
+                put(bytes[i]);
+            }
+        }
+
+        void flush() throws IOException {
+            stream.write(buffer, 0, used);
+            used = 0;
+        }
+    }
+
+    /**
+     * Samples ranks 0..size-1 with probability proportional to
+     * 1 / (rank + 1)^exponent
+     */
+    static class ZipfSampler {
+        final double[] cdf;
+
+        ZipfSampler(int size, double exponent) {
+            cdf = new double[size];
+            double sum = 0;
+            for (int rank = 0; rank < size; rank++) {
+                sum += 1 / Math.pow(rank + 1, exponent);
+                cdf[rank] = sum;
+            }
+            for (int rank = 0; rank < size; rank++) {
+                cdf[rank] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble());
+            rank = rank < 0 ? -rank - 1 : rank;
+            return Math.min(rank, cdf.length - 1);
+        }
+    }
+
+    final SplittableRandom random;
+
+    CorpusModel(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Write characters until 'out' is full
+     */
+    abstract void generate(Output out) throws IOException;
+
+    /**
+     * @param name uniform, dna, english, versions or large
+     * @param seed
+     * @param sigma Alphabet size of the uniform and large models, 0 for the default
+     * @param baseLength Length of one version of the versions model
+     * @param editRate Edits per character between two versions
+     * @return
+     */
+    static CorpusModel create(String name, long seed, int sigma, int baseLength, double editRate) {
+        switch (name) {
+            case "uniform":
+                return new Uniform(seed, sigma == 0 ? DNA : alphabet(sigma));
+            case "dna":
+                return new Dna(seed);
+            case "english":
+                return new English(seed);
+            case "versions":
+                return new Versions(seed, baseLength, editRate);
+            case "large":
+                return new LargeAlphabet(seed, sigma == 0 ? LargeAlphabet.MAX_SIGMA : sigma);
+            default:
+                throw new IllegalArgumentException("Unknown model " + name);
+        }
+    }
+
+    /**
+     * The first 'sigma' byte values from '!' on, wrapping around after 255,
+     * so small alphabets are printable. The terminator, 0, newline and
+     * carriage return are skipped.
+     */
+    static String alphabet(int sigma) {
+        if (sigma < 1 || sigma > LargeAlphabet.MAX_SIGMA) {
+            throw new IllegalArgumentException("The alphabet size must be between 1 and " + LargeAlphabet.MAX_SIGMA);
+        }
+        StringBuilder alphabet = new StringBuilder();
+        for (int k = 0; alphabet.length() < sigma; k++) {
+            int c = ('!' + k) % 256;
+            if (c != 0 && c != FMIndex.TERMINATOR && c != '\n' && c != '\r') {
+                alphabet.append((char) c);
+            }
+        }
+        return alphabet.toString();
+    }
+
+    /**
+     * Independent characters, all equally likely
+     */
+    static class Uniform extends CorpusModel {
+        final String alphabet;
+
+        Uniform(long seed, String alphabet) {
+            super(seed);
+            this.alphabet = alphabet;
+        }
+
+        @Override
+        void generate(Output out) throws IOException {
+            while (!out.isFull()) {
+                out.put(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+        }
+    }
+
+    /**
+     * Genome-like DNA: background sequence with GC_CONTENT, alternating
+     * with repeats. A repeat is either a tandem repeat, a short unit
+     * copied many times in a row, or a copy of one of a fixed set of
+     * interspersed repeat families with some substitutions and a random
+     * truncation, the way transposon copies diverge from their consensus.
+     */
+    static class Dna extends CorpusModel {
+        static final double GC_CONTENT = 0.41;
+        // Mean length of the background between two repeats
+        static final int MEAN_GAP = 800;
+        static final double TANDEM_FRACTION = 0.3;
+        static final int FAMILIES = 50;
+        static final int MIN_FAMILY_LENGTH = 300;
+        static final int MAX_FAMILY_LENGTH = 6000;
+        static final double DIVERGENCE = 0.1;
+
+        final byte[][] families;
+        final ZipfSampler familySampler = new ZipfSampler(FAMILIES, 1.0);
+
+        Dna(long seed) {
+            super(seed);
+            families = new byte[FAMILIES][];
+            for (int f = 0; f < FAMILIES; f++) {
+                families[f] = new byte[random.nextInt(MIN_FAMILY_LENGTH, MAX_FAMILY_LENGTH + 1)];
+                for (int i = 0; i < families[f].length; i++) {
+                    families[f][i] = base();
+                }
+            }
+        }
+
+        byte base() {
+            double r = random.nextDouble();
+            if (r < GC_CONTENT) {
+                return (byte) (r < GC_CONTENT / 2 ? 'C' : 'G');
+            }
+            return (byte) (r < (1 + GC_CONTENT) / 2 ? 'A' : 'T');
+        }
+
+        @Override
+        void generate(Output out) throws IOException {
+            while (!out.isFull()) {
+                int gap = (int) (-Math.log(1 - random.nextDouble()) * MEAN_GAP);
+                for (int i = 0; i < gap; i++) {
+                    out.put(base());
+                }
+                if (random.nextDouble() < TANDEM_FRACTION) {
+                    byte[] unit = new byte[random.nextInt(1, 7)];
+                    for (int i = 0; i < unit.length; i++) {
+                        unit[i] = base();
+                    }
+                    int copies = random.nextInt(5, 51);
+                    for (int copy = 0; copy < copies; copy++) {
+                        out.put(unit, 0, unit.length);
+                    }
+                } else {
+                    byte[] family = families[familySampler.sample(random)];
+                    int start = random.nextInt(family.length / 2);
+                    for (int i = start; i < family.length; i++) {
+                        out.put(random.nextDouble() < DIVERGENCE ? base() : family[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * English-like text: words of a fixed vocabulary drawn with Zipf's
+     * law, letters with English frequencies, in sentences
+     */
+    static class English extends CorpusModel {
+        static final int VOCABULARY = 50000;
+        static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+        static final double[] LETTER_WEIGHTS = {12.7, 9.1, 8.2, 7.5, 7.0, 6.7, 6.3, 6.1, 6.0, 4.3, 4.0,
+            2.8, 2.8, 2.4, 2.4, 2.2, 2.0, 2.0, 1.9, 1.5, 1.0, 0.8, 0.2, 0.2, 0.1, 0.1};
+
+        final byte[][] words = new byte[VOCABULARY][];
+        final ZipfSampler wordSampler = new ZipfSampler(VOCABULARY, 1.0);
+
+        English(long seed) {
+            super(seed);
+            double[] letterCdf = new double[LETTERS.length()];
+            double sum = 0;
+            for (int i = 0; i < letterCdf.length; i++) {
+                sum += LETTER_WEIGHTS[i];
+                letterCdf[i] = sum;
+            }
+            // Frequent words are short, as in real text
+            for (int rank = 0; rank < VOCABULARY; rank++) {
+                int length = 1 + (int) Math.min(14, Math.log(rank + 2) * 0.8 + random.nextInt(4));
+                words[rank] = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    int letter = Arrays.binarySearch(letterCdf, random.nextDouble() * sum);
+                    letter = letter < 0 ? -letter - 1 : letter;
+                    words[rank][i] = (byte) LETTERS.charAt(Math.min(letter, LETTERS.length() - 1));
+                }
+            }
+        }
+
+        @Override
+        void generate(Output out) throws IOException {
+            while (!out.isFull()) {
+                int length = random.nextInt(4, 26);
+                for (int w = 0; w < length; w++) {
+                    byte[] word = words[wordSampler.sample(random)];
+                    out.put(w == 0 ? Character.toUpperCase(word[0]) : word[0]);
+                    out.put(word, 1, word.length);
+                    if (w < length - 1 && random.nextInt(12) == 0) {
+                        out.put(',');
+                    }
+                    out.put(w < length - 1 ? ' ' : '.');
+                }
+                out.put(' ');
+            }
+        }
+    }
+
+    /**
+     * Highly repetitive collection: versions of one DNA document, each a
+     * copy of the previous one with substitutions, insertions and
+     * deletions at 'editRate' per character
+     */
+    static class Versions extends CorpusModel {
+        final int baseLength;
+        final double editRate;
+
+        Versions(long seed, int baseLength, double editRate) {
+            super(seed);
+            if (baseLength < 1 || editRate < 0 || editRate >= 1) {
+                throw new IllegalArgumentException("Versions need a positive length and an edit rate in [0, 1)");
+            }
+            this.baseLength = baseLength;
+            this.editRate = editRate;
+        }
+
+        @Override
+        void generate(Output out) throws IOException {
+            byte[] version = new byte[baseLength];
+            for (int i = 0; i < baseLength; i++) {
+                version[i] = (byte) DNA.charAt(random.nextInt(4));
+            }
+            byte[] next = new byte[baseLength + baseLength / 8 + 16];
+            int length = baseLength;
+            while (!out.isFull()) {
+                out.put(version, 0, length);
+                // Copy up to the next edit, skipping a geometric number of
+                // characters instead of drawing one number per character
+                int nextLength = 0;
+                int i = 0;
+                while (i < length) {
+                    int skip = editRate == 0 ? length
+                            : (int) Math.min(length, Math.log(1 - random.nextDouble()) / Math.log(1 - editRate));
+                    int copy = Math.min(skip, length - i);
+                    while (nextLength + copy + 1 > next.length) {
+                        next = Arrays.copyOf(next, 2 * next.length);
+                    }
+                    System.arraycopy(version, i, next, nextLength, copy);
+                    nextLength += copy;
+                    i += copy;
+                    if (i >= length) {
+                        break;
+                    }
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            next[nextLength++] = (byte) DNA.charAt(random.nextInt(4));
+                            i++;
+                            break;
+                        case 1:
+                            next[nextLength++] = (byte) DNA.charAt(random.nextInt(4));
+                            break;
+                        default:
+                            i++;
+                    }
+                }
+                byte[] swap = version;
+                version = next;
+                next = swap.length >= version.length ? swap : new byte[version.length];
+                length = nextLength;
+            }
+        }
+    }
+
+    /**
+     * Up to MAX_SIGMA distinct byte values with Zipfian frequencies, in a
+     * random order so frequent symbols are not the small codes
+     */
+    static class LargeAlphabet extends CorpusModel {
+        // Every byte but 0, the terminator, newline and carriage return
+        static final int MAX_SIGMA = 252;
+        static final double EXPONENT = 0.8;
+
+        final byte[] symbols;
+        final ZipfSampler sampler;
+
+        LargeAlphabet(long seed, int sigma) {
+            super(seed);
+            String alphabet = alphabet(sigma);
+            symbols = new byte[sigma];
+            for (int i = 0; i < sigma; i++) {
+                symbols[i] = (byte) alphabet.charAt(i);
+            }
+            for (int i = sigma - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte swap = symbols[i];
+                symbols[i] = symbols[j];
+                symbols[j] = swap;
+            }
+            sampler = new ZipfSampler(sigma, EXPONENT);
+        }
+
+        @Override
+        void generate(Output out) throws IOException {
+            while (!out.isFull()) {
+                out.put(symbols[sampler.sample(random)]);
+            }
+        }
+    }
+}
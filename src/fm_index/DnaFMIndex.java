@@ -0,0 +1,390 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Written by the group.
+ * FM-index specialized for DNA. The BW Text is packed at 2 bits per base,
+ * and the occurrence counts of A, C, G and T before every block are
+ * stored in the same long[] as the bases of the block:
+ *
+ *   long 0: count of A | count of C     long 1: count of G | count of T
+ *   long 2 to 7: 192 bases, 32 per long, base j at bits 2j and 2j + 1
+ *
+ * so a block is 64 bytes, the size of a cache line, and the rank of any
+ * base reads one block: the counts, then a popcount over at most six
+ * longs. A backward search step is two such ranks, instead of a descent
+ * through the wavelet tree with a map lookup per node. Java does not align
+ * arrays to cache lines, so a block may still straddle two lines.
+ *
+ * Every other character of the BW Text (the terminator, N, ...) is stored
+ * as A in the packed bases and kept exactly as runs of rows, since N
+ * comes in long runs in assembled genomes. The top bit of the first long
+ * marks the blocks with such rows, and only there rank(A) subtracts them.
+ *
+ * Answers are the same as those of FMIndex for the same text.
+ */
+public class DnaFMIndex implements TextIndex {
+
+    static final int BASES_PER_WORD = 32;
+    static final int WORDS_PER_BLOCK = 6;
+    static final int BASES_PER_BLOCK = BASES_PER_WORD * WORDS_PER_BLOCK;
+    static final int LONGS_PER_BLOCK = 2 + WORDS_PER_BLOCK;
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    // Top bit of the first long of a block that has other characters
+    private static final long HAS_OTHERS = 1L << 63;
+
+    /**
+     * Sorted, disjoint runs of rows [starts[i], ends[i])
+     */
+    static class Runs {
+        final int[] starts;
+        final int[] ends;
+        // Rows in the runs before run i
+        final int[] before;
+        final char[] chars;
+
+        Runs(List<int[]> runs, List<Character> runChars) {
+            starts = new int[runs.size()];
+            ends = new int[runs.size()];
+            before = new int[runs.size()];
+            chars = new char[runs.size()];
+            int total = 0;
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = runs.get(i)[0];
+                ends[i] = runs.get(i)[1];
+                before[i] = total;
+                chars[i] = runChars.get(i);
+                total += ends[i] - starts[i];
+            }
+        }
+
+        /**
+         * Rows of the runs that are smaller than 'row'
+         */
+        int countBefore(int row) {
+            int run = lastStartBefore(row);
+            if (run == -1) {
+                return 0;
+            }
+            return before[run] + Math.min(row, ends[run]) - starts[run];
+        }
+
+        /**
+         * @return The character of the run that contains 'row', or 0 if none does
+         */
+        char charAt(int row) {
+            int run = lastStartBefore(row + 1);
+            return run != -1 && row < ends[run] ? chars[run] : 0;
+        }
+
+        private int lastStartBefore(int row) {
+            int index = Arrays.binarySearch(starts, row);
+            return index >= 0 ? index - 1 : -index - 2;
+        }
+
+        long sizeInBytes() {
+            return MemoryReport.objectBytes(4, 0) + 3 * MemoryReport.arrayBytes(starts.length, 4)
+                    + MemoryReport.arrayBytes(chars.length, 2);
+        }
+    }
+
+    int n;
+    int blockSize;
+    // Blocks of counts and packed bases, see the class comment
+    long[] blocks;
+    // First row of A, C, G and T in the first column
+    int[] baseStart = new int[4];
+    // Rows of the BW Text that are not A, C, G or T, all together and
+    // by character, with the first row of every such character
+    Runs others;
+    HashMap<Character, Runs> othersByChar = new HashMap<>();
+    HashMap<Character, Integer> otherStart = new HashMap<>();
+    // Rows whose suffix array value is sampled, and the values
+    Block sampledRows;
+    PackedArray saSamples;
+
+    /**
+     * @param sequence The text, ending with the terminator
+     * @param blockSize Block size of the bitvector of the sampled rows
+     * @throws IllegalArgumentException If the text has more than 256 distinct characters
+     */
+    public DnaFMIndex(String sequence, int blockSize) {
+        this.n = sequence.length();
+        this.blockSize = blockSize;
+        ByteText text = ByteText.of(sequence);
+        int[] suffixArray = SkewSuffixArray.constructSuffixArray(text);
+        System.out.println("\t\tComputing BWT from suffix array");
+        ByteText bwt = text.bwt(suffixArray);
+        text = null;
+
+        System.out.println("\tSampling suffix array");
+        sampleSuffixArray(suffixArray, bwt);
+        suffixArray = null;
+
+        System.out.println("\tPacking BWT");
+        int[] counts = bwt.counts();
+        int smaller = 0;
+        for (int code = 0; code < bwt.alphabet.length; code++) {
+            int base = baseCode(bwt.alphabet[code]);
+            if (base >= 0) {
+                baseStart[base] = smaller;
+            } else {
+                otherStart.put(bwt.alphabet[code], smaller);
+            }
+            smaller += counts[code];
+        }
+        pack(bwt);
+    }
+
+    /**
+     * @return 0 to 3 for A, C, G and T, -1 for any other character
+     */
+    static int baseCode(char c) {
+        switch (c) {
+            case 'A': return 0;
+            case 'C': return 1;
+            case 'G': return 2;
+            case 'T': return 3;
+            default: return -1;
+        }
+    }
+
+    private void pack(ByteText bwt) {
+        int numberBlocks = n / BASES_PER_BLOCK + 1;
+        blocks = new long[numberBlocks * LONGS_PER_BLOCK];
+        int[] code = new int[bwt.alphabet.length];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = baseCode(bwt.alphabet[i]);
+        }
+
+        int[] counts = new int[4];
+        List<int[]> runs = new ArrayList<>();
+        List<Character> runChars = new ArrayList<>();
+        HashMap<Character, List<int[]>> runsByChar = new HashMap<>();
+        for (int block = 0; block < numberBlocks; block++) {
+            int first = block * LONGS_PER_BLOCK;
+            blocks[first] = ((long) counts[0] << 32) | (counts[1] & 0xFFFFFFFFL);
+            blocks[first + 1] = ((long) counts[2] << 32) | (counts[3] & 0xFFFFFFFFL);
+            boolean hasOthers = false;
+            int end = Math.min(n, (block + 1) * BASES_PER_BLOCK);
+            for (int row = block * BASES_PER_BLOCK; row < end; row++) {
+                int base = code[bwt.code(row)];
+                if (base >= 0) {
+                    int offset = row - block * BASES_PER_BLOCK;
+                    blocks[first + 2 + offset / BASES_PER_WORD] |= (long) base << (2 * (offset % BASES_PER_WORD));
+                    counts[base]++;
+                    continue;
+                }
+                // Left as A in the packed bases
+                hasOthers = true;
+                char c = bwt.charAt(row);
+                int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+                if (last != null && last[1] == row && runChars.get(runChars.size() - 1) == c) {
+                    last[1]++;
+                } else {
+                    runs.add(new int[]{row, row + 1});
+                    runChars.add(c);
+                }
+                List<int[]> own = runsByChar.computeIfAbsent(c, key -> new ArrayList<>());
+                if (!own.isEmpty() && own.get(own.size() - 1)[1] == row) {
+                    own.get(own.size() - 1)[1]++;
+                } else {
+                    own.add(new int[]{row, row + 1});
+                }
+            }
+            if (hasOthers) {
+                blocks[first] |= HAS_OTHERS;
+            }
+        }
+        others = new Runs(runs, runChars);
+        for (Map.Entry<Character, List<int[]>> entry : runsByChar.entrySet()) {
+            List<Character> chars = new ArrayList<>();
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                chars.add(entry.getKey());
+            }
+            othersByChar.put(entry.getKey(), new Runs(entry.getValue(), chars));
+        }
+    }
+
+    private void sampleSuffixArray(int[] suffixArray, CharSequence bwt) {
+        boolean[] sampled = new boolean[suffixArray.length];
+        int count = 0;
+        for (int i = 0; i < suffixArray.length; i++) {
+            if (suffixArray[i] % FMIndex.SA_SAMPLE_RATE == 0 || bwt.charAt(i) == FMIndex.TERMINATOR) {
+                sampled[i] = true;
+                count++;
+            }
+        }
+        saSamples = new PackedArray(count, PackedArray.widthFor(suffixArray.length - 1));
+        count = 0;
+        for (int i = 0; i < suffixArray.length; i++) {
+            if (sampled[i]) {
+                saSamples.set(count++, suffixArray[i]);
+            }
+        }
+        sampledRows = new Block(sampled, blockSize);
+    }
+
+    /**
+     * Occurrences of a base in the BW Text rows [0, row)
+     * @param base 0 to 3
+     * @param row 0 to n
+     * @return
+     */
+    int rank(int base, int row) {
+        int block = row / BASES_PER_BLOCK;
+        int first = block * LONGS_PER_BLOCK;
+        long header = blocks[first + (base >> 1)];
+        boolean hasOthers = base == 0 && (header & HAS_OTHERS) != 0;
+        int count = (int) ((base & 1) == 0 ? (header & ~HAS_OTHERS) >>> 32 : header);
+
+        // Pairs of bits equal to 'base' become 00, then one bit per match
+        long pattern = EVEN_BITS * base;
+        int offset = row - block * BASES_PER_BLOCK;
+        int word = first + 2;
+        for (int full = offset / BASES_PER_WORD; full > 0; full--, word++) {
+            count += Long.bitCount(matches(blocks[word], pattern));
+        }
+        int rest = offset % BASES_PER_WORD;
+        if (rest > 0) {
+            count += Long.bitCount(matches(blocks[word], pattern) & ((1L << (2 * rest)) - 1));
+        }
+        if (hasOthers) {
+            count -= others.countBefore(row) - others.countBefore(block * BASES_PER_BLOCK);
+        }
+        return count;
+    }
+
+    private static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(x | (x >>> 1)) & EVEN_BITS;
+    }
+
+    /**
+     * Occurrences of any character in the BW Text rows [0, row)
+     */
+    int rank(char c, int row) {
+        int base = baseCode(c);
+        if (base >= 0) {
+            return rank(base, row);
+        }
+        Runs runs = othersByChar.get(c);
+        return runs == null ? 0 : runs.countBefore(row);
+    }
+
+    /**
+     * Character of the BW Text at 'row'
+     */
+    char access(int row) {
+        int block = row / BASES_PER_BLOCK;
+        int first = block * LONGS_PER_BLOCK;
+        if ((blocks[first] & HAS_OTHERS) != 0) {
+            char other = others.charAt(row);
+            if (other != 0) {
+                return other;
+            }
+        }
+        int offset = row - block * BASES_PER_BLOCK;
+        long word = blocks[first + 2 + offset / BASES_PER_WORD];
+        return "ACGT".charAt((int) (word >>> (2 * (offset % BASES_PER_WORD))) & 3);
+    }
+
+    /**
+     * First row of 'c' in the first column, -1 if 'c' does not occur
+     */
+    private int start(char c) {
+        int base = baseCode(c);
+        if (base >= 0) {
+            return baseStart[base];
+        }
+        Integer start = otherStart.get(c);
+        return start == null ? -1 : start;
+    }
+
+    /**
+     * Backward search for 'query', one block read per rank for A, C, G and T
+     * @param query
+     * @return The 1-based range {s, e} of matching rows, or {1, 0} if there is no match
+     */
+    @Override
+    public int[] search(String query) {
+        int s = 1;
+        int e = n;
+        for (int i = query.length(); i > 0; i--) {
+            char q = query.charAt(i - 1);
+            int base = baseCode(q);
+            if (base >= 0) {
+                s = baseStart[base] + rank(base, s - 1) + 1;
+                e = baseStart[base] + rank(base, e);
+            } else {
+                int start = start(q);
+                if (start == -1) {
+                    return new int[]{1, 0};
+                }
+                s = start + rank(q, s - 1) + 1;
+                e = start + rank(q, e);
+            }
+            if (e < s) {
+                return new int[]{1, 0};
+            }
+        }
+        return new int[]{s, e};
+    }
+
+    /**
+     * Number of occurrences of the query
+     * @param query
+     * @return
+     */
+    public int count(String query) {
+        int[] range = search(query);
+        return Math.max(0, range[1] - range[0] + 1);
+    }
+
+    @Override
+    public int[] locate(String query) {
+        int[] range = search(query);
+        if (range[1] < range[0]) {
+            return new int[0];
+        }
+        int[] positions = new int[range[1] - range[0] + 1];
+        for (int row = range[0] - 1; row < range[1]; row++) {
+            positions[row - range[0] + 1] = locateRow(row);
+        }
+        return positions;
+    }
+
+    /**
+     * Suffix array value of a 0-based row
+     */
+    int locateRow(int row) {
+        int steps = 0;
+        while (!sampledRows.get(row)) {
+            char c = access(row);
+            row = start(c) + rank(c, row);
+            steps++;
+        }
+        return saSamples.getInt(sampledRows.getCount(row, true)) + steps;
+    }
+
+    public MemoryReport memoryReport() {
+        MemoryReport report = new MemoryReport();
+        // blocks, baseStart, others, othersByChar, otherStart, sampledRows, saSamples; n, blockSize
+        report.add(0, "DnaFMIndex", MemoryReport.objectBytes(7, 8));
+        report.add(1, "counts and packed BWT", MemoryReport.arrayBytes(blocks.length, 8));
+        long otherBytes = others.sizeInBytes() + MemoryReport.hashMapBytes(othersByChar)
+                + MemoryReport.hashMapBytes(otherStart);
+        for (Runs runs : othersByChar.values()) {
+            otherBytes += runs.sizeInBytes();
+        }
+        report.add(1, "other characters", otherBytes);
+        report.add(1, "SA samples", saSamples.sizeInBytes());
+        report.add(1, "sampled rows", sampledRows.sizeInBytes());
+        return report;
+    }
+}
@@ -0,0 +1,249 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Written by the group.
+ * Document listing over a collection of documents: the documents that
+ * contain a pattern, and the k documents where it occurs most often,
+ * without locating its occurrences.
+ *
+ * The documents are indexed as one FMIndex over "document1$document2$...".
+ * Next to it is the document array, the document of the suffix of every
+ * row, stored as a WaveletMatrix. The rows of a pattern form one range in the
+ * first level, and the rows of the documents sharing a prefix of bits
+ * form one range in every following level, so the number of rows of the
+ * pattern in a set of documents is the length of a range.
+ *
+ * topK walks these ranges largest first, so it stops after opening the
+ * nodes of the k answers: about k * log(documents) rank operations,
+ * whatever the number of occurrences.
+ */
+public class DocumentListing {
+
+    /**
+     * Number of occurrences of a pattern in one document
+     */
+    public static class DocumentCount {
+        final int document;
+        final int count;
+
+        DocumentCount(int document, int count) {
+            this.document = document;
+            this.count = count;
+        }
+
+        public int getDocument() {
+            return document;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return document + ": " + count;
+        }
+    }
+
+    FMIndex index;
+    // Position in the concatenation where every document starts
+    int[] starts;
+    // Document of the suffix of every row
+    WaveletMatrix documentArray;
+
+    /**
+     * @param documents None of them may contain the terminator
+     * @param blockSize
+     */
+    public DocumentListing(List<String> documents, int blockSize) {
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one document");
+        }
+        starts = new int[documents.size()];
+        StringBuilder text = new StringBuilder();
+        for (int d = 0; d < documents.size(); d++) {
+            String document = documents.get(d);
+            if (document.indexOf(FMIndex.TERMINATOR) >= 0) {
+                throw new IllegalArgumentException("Documents must not contain the terminator character");
+            }
+            starts[d] = text.length();
+            text.append(document).append(FMIndex.TERMINATOR);
+        }
+        index = new FMIndex(text.toString(), blockSize);
+        text = null;
+
+        System.out.println("\tComputing document array");
+        int[] rowDocuments = documentArray();
+        System.out.println("\tCreating document wavelet matrix");
+        documentArray = new WaveletMatrix(rowDocuments, starts.length - 1, blockSize);
+    }
+
+    /**
+     * Document of the suffix of every row, with one LF walk over the
+     * whole index from the suffix made of the last terminator. That is the
+     * first row that starts with the terminator, C['$'], which is row 0
+     * only when no character sorts before it. The document changes every
+     * time the character before is a terminator.
+     *
+     * LF treats the text as a rotation, where the terminator before
+     * position 0 is the last one. The terminator rows are sorted as
+     * suffixes instead, with the last terminator first, so LF from a
+     * document start counts the terminator of position 0 among the ones
+     * before it even when position 0 sorts after it. Those starts have a
+     * smaller terminator rank than the row of position 0, and land one
+     * row early.
+     */
+    private int[] documentArray() {
+        int[] documentArray = new int[index.n];
+        // Position 0 is sampled, and it is the smallest sampled position
+        int firstRow = index.sampledPositionRows.getInt(0);
+        int firstRank = index.wt.rank(FMIndex.TERMINATOR, firstRow);
+        int document = starts.length - 1;
+        int row = index.c.occurrence.get(FMIndex.TERMINATOR);
+        for (int position = index.n - 1; position >= 0; position--) {
+            documentArray[row] = document;
+            char previous = index.wt.access(row);
+            int rank = index.wt.rank(previous, row);
+            int next = index.c.occurrence.get(previous) + rank;
+            if (previous == FMIndex.TERMINATOR) {
+                document--;
+                if (rank < firstRank) {
+                    next++;
+                }
+            }
+            row = next;
+        }
+        return documentArray;
+    }
+
+    /**
+     * Number of documents
+     * @return
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Where 'document' starts in the concatenation that locate reports
+     * positions of
+     * @param document
+     * @return
+     */
+    public int documentStart(int document) {
+        return starts[document];
+    }
+
+    /**
+     * Positions of every occurrence of 'pattern' in the concatenation,
+     * in suffix array order
+     * @param pattern
+     * @return
+     */
+    public int[] locate(String pattern) {
+        checkPattern(pattern);
+        return index.locate(pattern);
+    }
+
+    /**
+     * Number of occurrences of 'pattern' in all the documents
+     * @param pattern
+     * @return
+     */
+    public int count(String pattern) {
+        checkPattern(pattern);
+        return index.count(pattern);
+    }
+
+    /**
+     * The k documents where 'pattern' occurs most often, by decreasing
+     * number of occurrences and increasing document number on ties
+     * @param pattern
+     * @param k
+     * @return At most k documents, fewer if fewer contain the pattern
+     */
+    public List<DocumentCount> topK(String pattern, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        return list(pattern, k);
+    }
+
+    /**
+     * Every document that contains 'pattern', with its number of
+     * occurrences, ordered like topK
+     * @param pattern
+     * @return
+     */
+    public List<DocumentCount> documents(String pattern) {
+        return list(pattern, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Greedy walk of the wavelet matrix. A node is a level, a range
+     * [s, e) of rows in that level and the bits of the documents of those
+     * rows seen so far; the largest range is opened first, and a node
+     * past the last level is one document. Ties go to the node whose
+     * smallest possible document is smaller, so equal counts come out
+     * in document order.
+     */
+    private List<DocumentCount> list(String pattern, int k) {
+        checkPattern(pattern);
+        List<DocumentCount> result = new ArrayList<>();
+        int[] range = index.search(pattern);
+        if (range[0] > range[1]) {
+            return result;
+        }
+        int bits = documentArray.bits;
+        // Entries: start row, end row (exclusive), level, document prefix
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> {
+            if (a[1] - a[0] != b[1] - b[0]) {
+                return Integer.compare(b[1] - b[0], a[1] - a[0]);
+            }
+            return Integer.compare(a[3] << (bits - a[2]), b[3] << (bits - b[2]));
+        });
+        queue.add(new int[]{range[0] - 1, range[1], 0, 0});
+        while (!queue.isEmpty() && result.size() < k) {
+            int[] node = queue.poll();
+            int s = node[0];
+            int e = node[1];
+            int level = node[2];
+            if (level == bits) {
+                result.add(new DocumentCount(node[3], e - s));
+                continue;
+            }
+            Block bitvector = documentArray.levels[level];
+            int zerosBeforeS = bitvector.getCount(s, false);
+            int zerosBeforeE = bitvector.getCount(e, false);
+            int prefix = node[3] << 1;
+            if (zerosBeforeE > zerosBeforeS) {
+                queue.add(new int[]{zerosBeforeS, zerosBeforeE, level + 1, prefix});
+            }
+            int onesBeforeS = s - zerosBeforeS;
+            int onesBeforeE = e - zerosBeforeE;
+            if (onesBeforeE > onesBeforeS) {
+                int zeros = documentArray.zeros[level];
+                queue.add(new int[]{zeros + onesBeforeS, zeros + onesBeforeE, level + 1, prefix | 1});
+            }
+        }
+        return result;
+    }
+
+    private static void checkPattern(String pattern) {
+        if (pattern.isEmpty() || pattern.indexOf(FMIndex.TERMINATOR) >= 0) {
+            throw new IllegalArgumentException("The pattern must be non empty, without '"
+                    + FMIndex.TERMINATOR + "'");
+        }
+    }
+
+    public MemoryReport memoryReport() {
+        MemoryReport report = index.memoryReport();
+        report.add(1, "document wavelet matrix", documentArray.sizeInBytes());
+        report.add(1, "document starts", MemoryReport.arrayBytes(starts.length, 4));
+        return report;
+    }
+}
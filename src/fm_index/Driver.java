@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.Scanner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +21,15 @@ public class Driver {
 //        System.out.println("=======================================");
 //        System.out.println("RUNNING SOURCES");
 //        runSources();
+//        System.out.println("=======================================");
+//        System.out.println("RUNNING BITVECTOR COMPARISON");
+//        runBitVectorComparison();
+//        System.out.println("=======================================");
+//        System.out.println("RUNNING PARALLEL BUILD");
+//        runParallelBuild();
+//        System.out.println("=======================================");
+//        System.out.println("RUNNING PLANNED LAYOUT");
+//        runPlannedLayout();
         System.out.println("=======================================");
         System.out.println("RUNNING ENGLISH");
         runEnglish();
@@ -109,14 +120,121 @@ public class Driver {
         }
     }
 
+    /**
+     * Written by the group.
+     * Compare the plain checkpointed Block against the RRR compressed block
+     * on random bitvectors of different densities: size in bytes and the
+     * average time of a rank query.
+     */
+    public static void runBitVectorComparison() {
+        int length = 1000000;
+        int numberQueries = 1000000;
+        double[] densities = {0.001, 0.01, 0.05, 0.25, 0.5};
+        Random random = new Random(42);
+
+        int[] queryIndexes = new int[numberQueries];
+        for (int i = 0; i < numberQueries; i++) {
+            queryIndexes[i] = random.nextInt(length + 1);
+        }
+
+        for (double density : densities) {
+            boolean[] bitvector = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                bitvector[i] = random.nextDouble() < density;
+            }
+            RankSelectBitVector[] blocks = {
+                    new Block(bitvector, 100),
+                    new Block(bitvector, 1000),
+                    new RRRBlock(bitvector),
+            };
+            String[] names = {"Block(100)", "Block(1000)", "RRRBlock"};
+
+            System.out.println(String.format("Density %.3f", density));
+            for (int b = 0; b < blocks.length; b++) {
+                RankSelectBitVector block = blocks[b];
+                long checksum = 0;
+                long start = System.nanoTime();
+                for (int index : queryIndexes) {
+                    checksum += block.getCount(index, true);
+                }
+                long end = System.nanoTime();
+                System.out.println(String.format("\t%s: %d bytes, %.1f ns/rank (checksum %d)",
+                        names[b], block.sizeInBytes(),
+                        (end - start) / (double) numberQueries, checksum));
+            }
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Wavelet tree build time with 1, 2, 4, ... worker threads, up to the
+     * number of cores, on a random text over a 64 character alphabet.
+     */
+    public static void runParallelBuild() {
+        int length = 4000000;
+        int blockSize = 1000;
+        Random random = new Random(42);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('0' + random.nextInt(64));
+        }
+        String text = new String(chars);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            // Warm up once so the first measurement does not include JIT time
+            new WaveletTree(text, blockSize, pool);
+            long start = System.currentTimeMillis();
+            new WaveletTree(text, blockSize, pool);
+            long end = System.currentTimeMillis();
+            pool.shutdown();
+            System.out.println(String.format("\t%d threads: %d ms", threads, end - start));
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Instead of sweeping block sizes by hand, let RankLayout choose the
+     * block size of every node for a few checkpoint budgets, and print the
+     * chosen layout next to the query times.
+     */
+    public static void runPlannedLayout() {
+        try {
+            Scanner in = new Scanner(new File("data/englishsample1M.txt"), "windows-1252");
+            String sequence = in.nextLine();
+            String[] queries = {
+                    "placed it in the hands"
+            };
+
+            long[] budgets = {16 * 1024, 128 * 1024, 1024 * 1024};
+            for (long budget : budgets) {
+                RankLayout layout = RankLayout.plan(sequence, budget);
+                System.out.println(layout.report());
+
+                long start = System.currentTimeMillis();
+                FMIndex fmi = new FMIndex(sequence, layout);
+                long end = System.currentTimeMillis();
+                System.out.println(String.format("\tIndex Build Time: %s", end - start));
+                for (String query : queries) {
+                    System.out.println(String.format("\tRunning query: %s", query));
+                    runQuery(fmi, query);
+                }
+            }
+        } catch (FileNotFoundException ex) {
+            Logger.getLogger(Driver.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
     public static void runBlockSize(String text, int blockSize, String[] queries) {
         long start = System.currentTimeMillis();
         FMIndex fmi = new FMIndex(text, blockSize);
         long end = System.currentTimeMillis();
 
         System.out.println(String.format("\tIndex Build Time: %s", end - start));
-        System.out.println("Meg used="+(Runtime.getRuntime().totalMemory()-
-                Runtime.getRuntime().freeMemory())/(1000*1000)+"M");
+        MemoryReport memory = fmi.memoryReport();
+        System.out.println(String.format("\tIndex size: %d bytes", memory.totalBytes()));
+        System.out.println(memory);
 
         for (String query: queries) {
             System.out.println(String.format("\tRunning query: %s", query));
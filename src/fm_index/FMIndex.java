@@ -1,54 +1,136 @@
 package fm_index;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Adam Groves
  */
-public class FMIndex {
+public class FMIndex implements TextIndex {
+    
+    // Every text position that is a multiple of this rate keeps its
+    // suffix array value, so locate needs at most SA_SAMPLE_RATE - 1 LF steps.
+    static final int SA_SAMPLE_RATE = 32;
+    // Character that ends the text, or each document of a multi document text
+    static final char TERMINATOR = '$';
+    // First int of a file written by save()
+    static final int FILE_MAGIC = 0x464D4931;
+    // Most ranges countPattern, locatePattern and the IgnoreCase
+    // methods keep per step
+    static final int MAX_PATTERN_INTERVALS = 1 << 16;
     
     WaveletTree wt;
     int blockSize;
+    int n;
     String sequence;
 //    SuffixArray sa;
     SkewSuffixArray sa;
-    String query;
-    char q;
-    int s;
-    int e;
     C c;
     HashMap<Integer, Integer> pos;
+    // Rows of the M table whose suffix array value is sampled,
+    // and the sampled values in row order, packed in log2(n) bits each.
+    Block sampledRows;
+    PackedArray saSamples;
+    // The sampled text positions in increasing order and their rows,
+    // where extract starts walking back from
+    PackedArray sampledPositions;
+    PackedArray sampledPositionRows;
+    // Built by the first maximalMatches or longestCommonSubstring call
+    MatchingStatistics matchingStatistics;
     
     public FMIndex(String sequence, int blockSize) {
+        this(sequence, RankLayout.uniform(blockSize));
+    }
+    
+    /**
+     * Written by the group.
+     * Build the index with the node block sizes of 'layout', for example
+     * one planned for the text with RankLayout.plan.
+     * @param sequence
+     * @param layout 
+     */
+    public FMIndex(String sequence, RankLayout layout) {
         this.sequence = sequence;
-        this.blockSize = blockSize;
+        this.n = sequence.length();
+        this.blockSize = layout.baseBlockSize();
         pos = new HashMap<>();
         
-        // Create suffix array (Also creates BW Text)
-        sa = new SkewSuffixArray(sequence);
-//        sa = new SuffixArray(sequence);
-        
-        // Get BW Text from suffix array
-        String bwt = sa.generateBwt();
-//        String bwt = sa.getBWT();
+        int[] suffixArray;
+        if (ByteText.fits(sequence)) {
+            // Small alphabets go through construction one byte per
+            // character, and only the DC3 recursion uses int[]
+            ByteText text = ByteText.of(sequence);
+            suffixArray = SkewSuffixArray.constructSuffixArray(text);
+            System.out.println("\t\tComputing BWT from suffix array");
+            ByteText byteBwt = text.bwt(suffixArray);
+            text = null;
+
+            // Sample first so the suffix array can go before the
+            // wavelet tree is built
+            System.out.println("\tSampling suffix array");
+            sampleSuffixArray(suffixArray, byteBwt);
+            suffixArray = null;
+
+            System.out.println("\tCreating C dictionary");
+            c = new C(byteBwt.alphabet, byteBwt.counts());
+
+            System.out.println("\tCreating Wavelet tree");
+            wt = new WaveletTree(byteBwt, layout, ForkJoinPool.commonPool());
+        } else {
+            // Create suffix array (Also creates BW Text)
+            sa = new SkewSuffixArray(sequence);
+//            sa = new SuffixArray(sequence);
+
+            // Get BW Text from suffix array
+            suffixArray = sa.computeFromText(sequence);
+            String stringBwt = sa.generateBwt(suffixArray);
+//            String bwt = sa.getBWT();
+
+            System.out.println("\tCreating C dictionary");
+            // Create C dictionary
+            c = new C(sequence);
 
-        System.out.println("\tCreating C dictionary");
-        // Create C dictionary
-        c = new C(sequence);
+            System.out.println("\tCreating Wavelet tree");
+            // Create wavelet tree from the BW Text
+            // This compresses the BW Text and allows for O(1) time retrieval of rank(x, i)
+            wt = new WaveletTree(stringBwt, layout, ForkJoinPool.commonPool());
 
-        System.out.println("\tCreating Wavelet tree");
-        // Create wavelet tree from the BW Text
-        // This compresses the BW Text and allows for O(1) time retrieval of rank(x, i)
+            System.out.println("\tSampling suffix array");
+            sampleSuffixArray(suffixArray, stringBwt);
+        }
+        sampleInverse();
+    }
+    
+    /**
+     * Written by the group.
+     * Build an index directly from a BW Text and its suffix array samples,
+     * without the original text. Used when merging the BW Texts of two segments.
+     * @param bwt
+     * @param sampled Rows whose suffix array value is kept
+     * @param saSamples Suffix array values of the sampled rows, in row order
+     * @param blockSize 
+     */
+    FMIndex(String bwt, boolean[] sampled, int[] saSamples, int blockSize) {
+        this.n = bwt.length();
+        this.blockSize = blockSize;
+        pos = new HashMap<>();
+        
+        // The BW Text has the same characters as the text
+        c = new C(bwt);
         wt = new WaveletTree(bwt, blockSize);
-       
-        // We no longer need bwt since it is represented as a wavelet tree and is compressed.
-        // Remove reference to BW Text so that garbage collector will clean up space in memory if needed.
-//        bwt = null;
-          
-        // Initialize start and end indexes
-        s = 0;
-        e = sequence.length();
+        this.sampledRows = new Block(sampled, blockSize);
+        this.saSamples = PackedArray.of(saSamples, n - 1);
+        sampleInverse();
     }
     
     
@@ -56,12 +138,19 @@ public class FMIndex {
      * Perform search query
      * @param query 
      */
+    @Override
     public int[] search(String query){
-        this.query = query;
+        // The range is kept in locals so that several threads
+        // can search the same index at once.
+        int s = 1;
+        int e = n;
         
         // Iterate the query string backwards
         for (int i = query.length(); i > 0 ; i--) {
-            q = query.charAt(i - 1);
+            char q = query.charAt(i - 1);
+            if (!c.occurrence.containsKey(q)) {
+                return new int[]{1, 0};
+            }
             s = c.occurrence.get(q) + wt.rank(q, s - 1) + 1;
             e = c.occurrence.get(q) + wt.rank(q, e);
             
@@ -78,92 +167,512 @@ public class FMIndex {
     }
     
     /**
-     * Get Last to First row mapping of M table (array of rotations)
-     * @param i
+     * Written by the group.
+     * Number of occurrences of the query
+     * @param query
      * @return 
      */
-    private int LF(int i){
-        Character[] alphabet = wt.root.alphabetMap.keySet().toArray(new Character[0]);
-        char li = 0;
-        for (int j = 1; j < alphabet.length; j++) {
-            int rank1 = wt.rank(alphabet[j].charValue(), i);
-            int rank2 = wt.rank(alphabet[j].charValue(), i-1);
-            if(rank1 != rank2){
-                li = alphabet[j].charValue();
-            }
-        }
-        return c.occurrence.get(li);
+    public int count(String query){
+        int[] range = search(query);
+        return Math.max(0, range[1] - range[0] + 1);
     }
     
     /**
-     * Uncompress BW Text from Wavelet Tree
+     * Written by the group.
+     * Find the text positions of every occurrence of the query. Each row of the
+     * search range is walked back with LF until it reaches a sampled row.
+     * @param query
      * @return 
      */
-    private String getBWT(){
-        Character[] alphabet = wt.root.alphabetMap.keySet().toArray(new Character[0]);
-        String bwt = "";
+    @Override
+    public int[] locate(String query){
+        int[] range = search(query);
+        if (range[1] < range[0]) {
+            return new int[0];
+        }
         
-        for (int i = 0; i < wt.root.bitVector.length+1; i++) {
-            for (int j = 0; j < alphabet.length; j++) {
-                int rank1 = wt.rank(alphabet[j].charValue(), i);
-                int rank2 = wt.rank(alphabet[j].charValue(), i-1);
-                if(rank1 != rank2){
-                    bwt += alphabet[j];
-                }
-            }
+        int[] positions = new int[range[1] - range[0] + 1];
+        for (int row = range[0] - 1; row < range[1]; row++) {
+            positions[row - range[0] + 1] = locateRow(row);
         }
-        return bwt;
+        return positions;
     }
     
     /**
-     * Reconstruct the original compressed string
+     * Suffix array value of a 0-based row of the M table
+     * @param row
      * @return 
      */
-    public String reconstructS() {
-        char[] last = getBWT().toCharArray();
-        char[] first = Arrays.copyOf(last, last.length);
-        Arrays.sort(first);
-        
-        // Create wavelet trees out of first and last columns in order to perform quick ranks.
-        WaveletTree firstWT = new WaveletTree(first.toString(), this.blockSize);
-        
-        String original = "";
-        
-        // Get first letter in S
-        int lastIndex = 0;
-        char firstLetter = 0;
-        for (int i = 0; i < last.length; i++) {
-            if(last[i] == '$'){
-                firstLetter = first[i];
-                original += firstLetter;
-                lastIndex = i;
-                break;
+    int locateRow(int row){
+        int steps = 0;
+        while (!sampledRows.get(row)) {
+            row = LF(row);
+            steps++;
+        }
+        return saSamples.getInt(sampledRows.getCount(row, true)) + steps;
+    }
+    
+    /**
+     * Written by the group.
+     * Backward search for a degenerate pattern, see IupacPattern. At every
+     * step each range is extended by every allowed character, so the ranges
+     * are those of all the exact strings the pattern stands for. Ranges of
+     * the same length strings never overlap, and ranges that touch are
+     * merged: extending the union gives the union of the extensions. A
+     * pattern that starts with N is still one range per step.
+     * @param pattern
+     * @param maxIntervals Most ranges kept after a step
+     * @return The 1-based ranges {s, e} of matching rows, in increasing order
+     * @throws IllegalStateException If a step leaves more than 'maxIntervals' ranges
+     */
+    public List<int[]> searchPattern(String pattern, int maxIntervals){
+        return searchSets(IupacPattern.parse(pattern), maxIntervals, pattern);
+    }
+
+    /**
+     * Written by the group.
+     * Backward search that ignores case: every letter of the query matches
+     * its Character.toLowerCase and Character.toUpperCase forms. Works on the index of the original text, so
+     * there is no second, lower case index to build, and extract still
+     * returns the text as it was.
+     * @param query
+     * @param maxIntervals Most ranges kept after a step
+     * @return The 1-based ranges {s, e} of matching rows, in increasing order
+     * @throws IllegalStateException If a step leaves more than 'maxIntervals' ranges
+     */
+    public List<int[]> searchIgnoreCase(String query, int maxIntervals){
+        char[][] positions = new char[query.length()][];
+        for (int i = 0; i < query.length(); i++) {
+            char lower = Character.toLowerCase(query.charAt(i));
+            char upper = Character.toUpperCase(query.charAt(i));
+            positions[i] = lower == upper ? new char[]{lower}
+                    : new char[]{(char) Math.min(lower, upper), (char) Math.max(lower, upper)};
+        }
+        return searchSets(positions, maxIntervals, query);
+    }
+
+    /**
+     * Number of occurrences of 'query', ignoring case
+     * @param query
+     * @return
+     */
+    public int countIgnoreCase(String query){
+        return countRows(searchIgnoreCase(query, MAX_PATTERN_INTERVALS));
+    }
+
+    /**
+     * Text positions of every occurrence of 'query', ignoring case, in
+     * suffix array order
+     * @param query
+     * @return
+     */
+    public int[] locateIgnoreCase(String query){
+        return locateRows(searchIgnoreCase(query, MAX_PATTERN_INTERVALS));
+    }
+
+    /**
+     * Backward search where position i of the pattern may be any of the
+     * characters in positions[i], which must be sorted
+     */
+    private List<int[]> searchSets(char[][] positions, int maxIntervals, String pattern){
+        List<int[]> ranges = new ArrayList<>();
+        ranges.add(new int[]{1, n});
+        for (int i = positions.length - 1; i >= 0 && !ranges.isEmpty(); i--) {
+            List<int[]> next = new ArrayList<>();
+            // A range of one row can only be extended by the BW character of
+            // that row. Reading it once is cheaper than two ranks for every
+            // allowed character.
+            char[] single = null;
+            if (positions[i].length > 1) {
+                single = new char[ranges.size()];
+                for (int r = 0; r < single.length; r++) {
+                    int[] range = ranges.get(r);
+                    if (range[0] == range[1]) {
+                        single[r] = wt.access(range[0] - 1);
+                    }
+                }
+            }
+            // The characters are sorted, so are the new ranges
+            for (char q : positions[i]) {
+                Integer start = c.occurrence.get(q);
+                if (start == null) {
+                    continue;
+                }
+                for (int r = 0; r < ranges.size(); r++) {
+                    int[] range = ranges.get(r);
+                    int s;
+                    int e;
+                    if (single != null && range[0] == range[1]) {
+                        if (single[r] != q) {
+                            continue;
+                        }
+                        s = e = start + wt.rank(q, range[1]);
+                    } else {
+                        s = start + wt.rank(q, range[0] - 1) + 1;
+                        e = start + wt.rank(q, range[1]);
+                    }
+                    if (s > e) {
+                        continue;
+                    }
+                    int[] last = next.isEmpty() ? null : next.get(next.size() - 1);
+                    if (last != null && last[1] + 1 == s) {
+                        last[1] = e;
+                    } else {
+                        next.add(new int[]{s, e});
+                    }
+                }
+            }
+            if (next.size() > maxIntervals) {
+                throw new IllegalStateException("Pattern " + pattern + " needs more than "
+                        + maxIntervals + " ranges at position " + i);
+            }
+            ranges = next;
+        }
+        return ranges;
+    }
+
+    /**
+     * Number of occurrences of a degenerate pattern
+     * @param pattern
+     * @return
+     */
+    public int countPattern(String pattern){
+        return countRows(searchPattern(pattern, MAX_PATTERN_INTERVALS));
+    }
+
+    /**
+     * Text positions of every occurrence of a degenerate pattern, in
+     * suffix array order
+     * @param pattern
+     * @return
+     */
+    public int[] locatePattern(String pattern){
+        return locateRows(searchPattern(pattern, MAX_PATTERN_INTERVALS));
+    }
+
+    private static int countRows(List<int[]> ranges){
+        int count = 0;
+        for (int[] range : ranges) {
+            count += range[1] - range[0] + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Suffix array values of every row of 'ranges'
+     */
+    private int[] locateRows(List<int[]> ranges){
+        int[] positions = new int[countRows(ranges)];
+        int index = 0;
+        for (int[] range : ranges) {
+            for (int row = range[0] - 1; row < range[1]; row++) {
+                positions[index++] = locateRow(row);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Written by the group.
+     * Maximal exact matches of 'query' of at least 'minLength' characters,
+     * see MatchingStatistics.maximalMatches. The LCP array they need is
+     * built on the first call.
+     * @param query
+     * @param minLength
+     * @return
+     */
+    public List<MatchingStatistics.Match> maximalMatches(String query, int minLength){
+        return matchingStatistics().maximalMatches(query, minLength);
+    }
+
+    /**
+     * Longest substring of 'query' that occurs in the text, see
+     * MatchingStatistics.longestCommonSubstring
+     * @param query
+     * @return
+     */
+    public MatchingStatistics.Match longestCommonSubstring(String query){
+        return matchingStatistics().longestCommonSubstring(query);
+    }
+
+    synchronized MatchingStatistics matchingStatistics(){
+        if (matchingStatistics == null) {
+            matchingStatistics = new MatchingStatistics(this);
+        }
+        return matchingStatistics;
+    }
+
+    /**
+     * Keep the suffix array values of the rows that start at a sampled
+     * text position. Rows preceded by the terminator are always sampled,
+     * so locate never has to step LF across the end of a document.
+     * The full suffix array is not retained.
+     * @param suffixArray 
+     * @param bwt
+     */
+    private void sampleSuffixArray(int[] suffixArray, CharSequence bwt){
+        boolean[] sampled = new boolean[suffixArray.length];
+        int count = 0;
+        for (int i = 0; i < suffixArray.length; i++) {
+            if (suffixArray[i] % SA_SAMPLE_RATE == 0 || bwt.charAt(i) == TERMINATOR) {
+                sampled[i] = true;
+                count++;
             }
         }
         
-        for(int k = 0; k < last.length -1; k++){
-            
-            int count = 0;
-            for (int i = 0; i <= lastIndex; i++) {
-                if (first[i] == original.charAt(original.length()-1)) {
-                    count++;
-                }
+        saSamples = new PackedArray(count, PackedArray.widthFor(n - 1));
+        count = 0;
+        for (int i = 0; i < suffixArray.length; i++) {
+            if (sampled[i]) {
+                saSamples.set(count++, suffixArray[i]);
             }
+        }
+        sampledRows = new Block(sampled, blockSize);
+    }
 
-            int count2 = 0;
-            for (int i = 0; i < last.length; i++) {
-                if (last[i] == original.charAt(original.length()-1)) {
-                    count2++;
-                    if(count2 == count){
-                        original += first[i];
-                        lastIndex = i;
-                        break;
-                    }
+    /**
+     * Written by the group.
+     * Sort the suffix array samples by text position, so that the row of
+     * the first sampled position after any position can be found.
+     */
+    private void sampleInverse(){
+        long[] pairs = new long[saSamples.length()];
+        int sample = 0;
+        for (int row = 0; row < n; row++) {
+            if (sampledRows.get(row)) {
+                pairs[sample] = (saSamples.get(sample) << 32) | row;
+                sample++;
+            }
+        }
+        Arrays.sort(pairs);
+        sampledPositions = new PackedArray(pairs.length, PackedArray.widthFor(n - 1));
+        sampledPositionRows = new PackedArray(pairs.length, PackedArray.widthFor(n - 1));
+        for (int i = 0; i < pairs.length; i++) {
+            sampledPositions.set(i, pairs[i] >>> 32);
+            sampledPositionRows.set(i, (int) pairs[i]);
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Characters [start, start + length) of the text, read backwards with LF
+     * from the first sampled position at or after the end, so at most
+     * length + SA_SAMPLE_RATE - 1 steps. The row of position 0 stands for
+     * the end of the text, since the text is a rotation.
+     * For indexes merged by SegmentedIndex this is only exact within one
+     * document, because LF does not cross their document boundaries.
+     * @param start
+     * @param length
+     * @return 
+     */
+    public String extract(int start, int length){
+        if (start < 0 || length < 0 || start > n - length) {
+            throw new IllegalArgumentException("Range " + start + "+" + length + " is outside the text");
+        }
+        if (length == 0) {
+            return "";
+        }
+        int end = start + length;
+        int sample = sampledPositions.lowerBound(end);
+        int position;
+        int row;
+        if (sample < sampledPositions.length()) {
+            position = sampledPositions.getInt(sample);
+            row = sampledPositionRows.getInt(sample);
+        } else {
+            position = n;
+            row = sampledPositionRows.getInt(0);
+        }
+
+        char[] chars = new char[length];
+        while (position > start) {
+            // The last column holds the character before the row's suffix
+            char previous = wt.access(row);
+            position--;
+            if (position < end) {
+                chars[position - start] = previous;
+            }
+            if (position > start) {
+                row = c.occurrence.get(previous) + wt.rank(previous, row);
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Written by the group.
+     * Write the index to 'filename': the BW Text and the suffix array
+     * samples. Loading rebuilds the wavelet tree and C table from them,
+     * which is much cheaper than building the suffix array again.
+     * @param filename
+     * @throws IOException 
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeChar(wt.access(i));
+            }
+            out.writeInt(saSamples.length());
+            int sample = 0;
+            for (int row = 0; row < n; row++) {
+                if (sampledRows.get(row)) {
+                    out.writeInt(row);
+                    out.writeInt(saSamples.getInt(sample++));
                 }
             }
         }
+    }
+
+    /**
+     * Whether 'filename' starts like a file written by save()
+     * @param filename
+     * @return
+     */
+    public static boolean isSaved(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == FILE_MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Read an index written by save()
+     * @param filename
+     * @param blockSize
+     * @return
+     * @throws IOException If the file is not a saved index
+     */
+    public static FMIndex load(String filename, int blockSize) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException(filename + " is not a saved FMIndex");
+            }
+            int length = in.readInt();
+            char[] bwt = new char[length];
+            for (int i = 0; i < length; i++) {
+                bwt[i] = in.readChar();
+            }
+            boolean[] sampled = new boolean[length];
+            int[] samples = new int[in.readInt()];
+            for (int i = 0; i < samples.length; i++) {
+                sampled[in.readInt()] = true;
+                samples[i] = in.readInt();
+            }
+            return new FMIndex(new String(bwt), sampled, samples, blockSize);
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Bytes taken by every part of the index: the C table, each wavelet
+     * tree node with its bitvector, checkpoints and alphabet, the suffix
+     * array samples, and the fields that keep the text alive. The text is
+     * referenced by 'sequence', the C table and the suffix array builder,
+     * and the BW Text by the wavelet tree.
+     * @return
+     */
+    public MemoryReport memoryReport(){
+        MemoryReport report = new MemoryReport();
+        // wt, sequence, sa, c, pos, sampledRows, saSamples,
+        // sampledPositions, sampledPositionRows, matchingStatistics;
+        // blockSize, n
+        report.add(0, "FMIndex", MemoryReport.objectBytes(10, 8));
+        report.addString(1, "sequence (retained text)", sequence);
+
+        report.add(1, "C table", MemoryReport.objectBytes(2, 0) + MemoryReport.hashMapBytes(c.occurrence));
+        report.addString(2, "C.s (retained text)", c.s);
+
+        wt.addTo(report, 1);
+
+        report.add(1, "SA samples", saSamples.sizeInBytes());
+        report.add(1, "sampled positions", sampledPositions.sizeInBytes() + sampledPositionRows.sizeInBytes());
+        report.add(1, "sampled rows", sampledRows.sizeInBytes());
+        report.add(1, "pos", MemoryReport.hashMapBytes(pos));
+        if (matchingStatistics != null) {
+            report.add(1, "LCP array", matchingStatistics.lcp.sizeInBytes());
+        }
+        if (sa != null) {
+            report.add(1, "SkewSuffixArray", MemoryReport.objectBytes(1, 0));
+            report.addString(2, "SkewSuffixArray.text (retained text)", sa.getText());
+        }
+        return report;
+    }
+
+    /**
+     * Get Last to First row mapping of M table (array of rotations)
+     * @param i 0-based row of the M table
+     * @return 
+     */
+    int LF(int i){
+        char li = wt.access(i);
+        return c.occurrence.get(li) + wt.rank(li, i);
+    }
+    
+    /**
+     * Get First to Last row mapping of M table (array of rotations),
+     * the inverse of LF. The character of row i in the first column is the
+     * one whose C range contains i, and it sits in the last column at the
+     * position of its matching occurrence.
+     * @param i 0-based row of the M table
+     * @return 
+     */
+    int FL(int i){
+        char fi = firstColumn(i);
+        return wt.select(fi, i - c.occurrence.get(fi) + 1);
+    }
+    
+    /**
+     * Character of row i in the first column: the one with the largest
+     * C value that is at most i
+     * @param i 0-based row of the M table
+     * @return 
+     */
+    char firstColumn(int i){
+        char fi = 0;
+        for (char a : wt.root.alphabet) {
+            if (c.occurrence.get(a) <= i) {
+                fi = a;
+            }
+        }
+        return fi;
+    }
+    
+    /**
+     * Uncompress BW Text from Wavelet Tree
+     * @return 
+     */
+    String getBWT(){
+        StringBuilder bwt = new StringBuilder(wt.root.length());
         
-        return original;
+        for (int i = 0; i < wt.root.length(); i++) {
+            bwt.append(wt.access(i));
+        }
+        return bwt.toString();
+    }
+    
+    /**
+     * Reconstruct the original compressed string, read forwards with FL
+     * from the row of position 0. That is not row 0 when the text has
+     * characters below the terminator, such as spaces.
+     * @return 
+     */
+    public String reconstructS() {
+        char[] original = new char[n];
+        // Position 0 is sampled, and it is the smallest sampled position
+        int row = sampledPositionRows.getInt(0);
+        for (int k = 0; k < n; k++) {
+            original[k] = firstColumn(row);
+            if (k < n - 1) {
+                row = FL(row);
+            }
+        }
+        return new String(original);
     }
     
     
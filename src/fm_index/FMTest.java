@@ -4,7 +4,15 @@
  */
 package fm_index;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -25,5 +33,85 @@ public class FMTest {
         FMIndex fmi = new FMIndex("mississippi$", 3);
         System.out.println("Original text: " + fmi.reconstructS());
 
+        // Spaces sort before the terminator, so row 0 is not its row
+        String spaced = "cc bbabb to be or not to be$";
+        FMIndex spacedIndex = new FMIndex(spaced, 3);
+        check("reconstructS with spaces", spaced.equals(spacedIndex.reconstructS()));
+        String query = "to be or";
+        check("maximalMatches with spaces",
+                matchStrings(spacedIndex.maximalMatches(query, 2)).equals(maximalMatches(spaced, query, 2)));
+        String hamlet = "to be or not to be, that is the question$";
+        Map<String, Integer> repeats = new ConcurrentHashMap<>();
+        new SubstringTraversal(new FMIndex(hamlet, 3)).maximalRepeats(2, 10,
+                (repeat, count) -> repeats.put(repeat.toString(), count));
+        check("maximalRepeats with spaces", repeats.equals(maximalRepeats(hamlet, 2, 10)));
+        DocumentListing listing = new DocumentListing(List.of("hello world", "world hello!", "say hello, hello"), 3);
+        check("documents with spaces", listing.documents("hello").toString().equals("[2: 2, 0: 1, 1: 1]"));
+    }
+
+    private static Set<String> matchStrings(List<MatchingStatistics.Match> matches) {
+        Set<String> strings = new TreeSet<>();
+        for (MatchingStatistics.Match match : matches) {
+            strings.add(match.toString());
+        }
+        return strings;
+    }
+
+    /**
+     * Maximal exact matches of at least 'minLength' characters, by
+     * extending a match from every pair of starting positions that cannot
+     * be extended left. 'text' ends with the terminator.
+     */
+    private static Set<String> maximalMatches(String text, String query, int minLength) {
+        Set<String> matches = new TreeSet<>();
+        for (int i = 0; i < query.length(); i++) {
+            for (int p = 0; p < text.length() - 1; p++) {
+                if (i > 0 && p > 0 && query.charAt(i - 1) == text.charAt(p - 1)) {
+                    continue;
+                }
+                int length = 0;
+                while (i + length < query.length() && query.charAt(i + length) == text.charAt(p + length)) {
+                    length++;
+                }
+                if (length >= minLength) {
+                    matches.add(new MatchingStatistics.Match(i, p, length).toString());
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Maximal repeats of 'text', which ends with the terminator, from the
+     * occurrences of every substring and the characters around them
+     */
+    private static Map<String, Integer> maximalRepeats(String text, int minCount, int maxLength) {
+        Map<String, Integer> repeats = new HashMap<>();
+        for (int length = 1; length <= maxLength; length++) {
+            Map<String, List<Integer>> occurrences = new HashMap<>();
+            for (int p = 0; p + length < text.length(); p++) {
+                occurrences.computeIfAbsent(text.substring(p, p + length), key -> new ArrayList<>()).add(p);
+            }
+            for (Map.Entry<String, List<Integer>> entry : occurrences.entrySet()) {
+                List<Integer> positions = entry.getValue();
+                if (positions.size() < minCount) {
+                    continue;
+                }
+                Set<Character> before = new HashSet<>();
+                Set<Character> after = new HashSet<>();
+                for (int p : positions) {
+                    before.add(text.charAt(p == 0 ? text.length() - 1 : p - 1));
+                    after.add(text.charAt(p + length));
+                }
+                if (before.size() > 1 && after.size() > 1) {
+                    repeats.put(entry.getKey(), positions.size());
+                }
+            }
+        }
+        return repeats;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "ok" : "FAILED"));
     }
 }
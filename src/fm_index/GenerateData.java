@@ -1,38 +1,254 @@
 package fm_index;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.util.Random;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.SplittableRandom;
 
 /**
+ * Written by the group.
+ * Deterministic generator of synthetic texts and of query files for them,
+ * to benchmark the index at any scale without external datasets.
  *
- * @author Adam Groves
+ * Usage:
+ *   GenerateData
+ *   GenerateData text model length outFile [options]
+ *   GenerateData queries textFile count outFile [options]
+ *
+ * Without arguments, 1000 uniform ACGT characters go to sequence.dat.
+ * Models are described in CorpusModel:
+ *   uniform    independent characters (ACGT, or -sigma characters)
+ *   dna        genome-like DNA with tandem and interspersed repeats
+ *   english    Zipfian words with English letter frequencies
+ *   versions   versions of one document, each with a few edits
+ *   large      up to 252 byte values with Zipfian frequencies
+ * Lengths take a k, m or g suffix. The text is streamed to the file, so
+ * memory does not depend on its length.
+ *
+ * Text options:
+ *   -seed n          Seed of the generator (default 1)
+ *   -sigma n         Alphabet size of the uniform and large models
+ *   -baseLength n    Length of one version (default 1m)
+ *   -editRate r      Edits per character between versions (default 0.001)
+ *
+ * Query options:
+ *   -seed n          Seed of the generator (default 1)
+ *   -hitRatio r      Fraction of queries taken from the text (default 0.9)
+ *   -minLength n     Shortest query (default 8)
+ *   -maxLength n     Longest query (default 32)
+ *
+ * A hit is a substring of the text at a random position, with a length
+ * drawn uniformly between the bounds. A miss is a hit with one character
+ * replaced by another of the alphabet of the text, so it has the same
+ * length and characters as real queries. It does not occur in the text
+ * with high probability once the queries are long for the text, but it is
+ * not checked. Query files have one query per line, as IndexTool reads.
  */
 public class GenerateData {
 
-    
+    private static final String USAGE = "Usage:\n"
+            + "\tGenerateData\n"
+            + "\tGenerateData text uniform|dna|english|versions|large length outFile [-seed n] [-sigma n] [-baseLength n] [-editRate r]\n"
+            + "\tGenerateData queries textFile count outFile [-seed n] [-hitRatio r] [-minLength n] [-maxLength n]";
+    // Bytes read from the start of a text to find its alphabet
+    static final int ALPHABET_SAMPLE = 1 << 20;
+    // Positions tried for a hit before giving up on the text
+    static final int MAX_ATTEMPTS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        try {
+            if (args.length == 0) {
+                text("uniform", 1000, "sequence.dat", 1, 0, 0, 0);
+                return;
+            }
+            if (args.length < 4) {
+                throw new IllegalArgumentException("Missing arguments");
+            }
+            long seed = 1;
+            int sigma = 0;
+            int baseLength = 1 << 20;
+            double editRate = 0.001;
+            double hitRatio = 0.9;
+            int minLength = 8;
+            int maxLength = 32;
+            for (int i = 4; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "-seed":
+                        seed = Long.parseLong(args[i + 1]);
+                        break;
+                    case "-sigma":
+                        sigma = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-baseLength":
+                        baseLength = (int) parseLength(args[i + 1]);
+                        break;
+                    case "-editRate":
+                        editRate = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "-hitRatio":
+                        hitRatio = Double.parseDouble(args[i + 1]);
+                        break;
+                    case "-minLength":
+                        minLength = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-maxLength":
+                        maxLength = Integer.parseInt(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            switch (args[0]) {
+                case "text":
+                    text(args[1], parseLength(args[2]), args[3], seed, sigma, baseLength, editRate);
+                    break;
+                case "queries":
+                    queries(args[1], parseLength(args[2]), args[3], seed, hitRatio, minLength, maxLength);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + args[0]);
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A number with an optional k, m or g suffix, powers of 1024
+     */
+    static long parseLength(String value) {
+        long unit = 1;
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'k':
+                unit = 1L << 10;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'g':
+                unit = 1L << 30;
+                break;
+        }
+        String digits = unit == 1 ? value : value.substring(0, value.length() - 1);
+        long length = Long.parseLong(digits) * unit;
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length " + value);
+        }
+        return length;
+    }
+
+    /**
+     * Write 'length' characters of 'model' to 'outFile'
+     */
+    static void text(String model, long length, String outFile, long seed, int sigma, int baseLength,
+            double editRate) throws IOException {
+        CorpusModel corpus = CorpusModel.create(model, seed, sigma, baseLength, editRate);
+        long start = System.currentTimeMillis();
+        try (OutputStream stream = new FileOutputStream(outFile)) {
+            CorpusModel.Output out = new CorpusModel.Output(stream, length);
+            corpus.generate(out);
+            out.flush();
+        }
+        long end = System.currentTimeMillis();
+        System.err.println("Wrote " + length + " characters of " + model + " to " + outFile
+                + " in " + (end - start) + " ms");
+    }
+
     /**
-     * @param args the command line arguments
+     * Write 'count' queries for the text in 'textFile' to 'outFile'
      */
-    public static void main(String[] args) {
-        
-        try (PrintWriter writer = new PrintWriter("sequence.dat", "UTF-8")) {
-            
-            Random r = new Random();
-            char[] alphabet = new char[]{'A', 'C', 'G', 'T'};
-            
-            for (int i = 0; i < 1000; i++) {
-                int index = new Random().nextInt(alphabet.length);
-                char random = (alphabet[index]);
-                writer.print(random);
-            }
-            writer.close();
-        } catch (FileNotFoundException | UnsupportedEncodingException ex) {
-            Logger.getLogger(GenerateData.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        
+    static void queries(String textFile, long count, String outFile, long seed, double hitRatio,
+            int minLength, int maxLength) throws IOException {
+        if (minLength < 1 || maxLength < minLength) {
+            throw new IllegalArgumentException("Query lengths must satisfy 1 <= minLength <= maxLength");
+        }
+        if (hitRatio < 0 || hitRatio > 1) {
+            throw new IllegalArgumentException("The hit ratio must be between 0 and 1");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        long hits = 0;
+        try (RandomAccessFile text = new RandomAccessFile(textFile, "r");
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile), 1 << 16)) {
+            long size = text.length();
+            if (size < minLength) {
+                throw new IllegalArgumentException(textFile + " is shorter than the shortest query");
+            }
+            byte[] alphabet = alphabet(text, size);
+            byte[] query = new byte[maxLength];
+            for (long q = 0; q < count; q++) {
+                int length = (int) Math.min(size, random.nextInt(minLength, maxLength + 1));
+                readSubstring(text, size, random, query, length);
+                if (random.nextDouble() < hitRatio || alphabet.length < 2) {
+                    hits++;
+                } else {
+                    int position = random.nextInt(length);
+                    byte replacement;
+                    do {
+                        replacement = alphabet[random.nextInt(alphabet.length)];
+                    } while (replacement == query[position]);
+                    query[position] = replacement;
+                }
+                out.write(query, 0, length);
+                out.write('\n');
+            }
+        }
+        System.err.println("Wrote " + count + " queries (" + hits + " hits) to " + outFile);
+    }
+
+    /**
+     * Distinct characters of the start of the text that can be in queries
+     */
+    private static byte[] alphabet(RandomAccessFile text, long size) throws IOException {
+        byte[] sample = new byte[(int) Math.min(size, ALPHABET_SAMPLE)];
+        text.seek(0);
+        text.readFully(sample);
+        boolean[] seen = new boolean[256];
+        int distinct = 0;
+        for (byte b : sample) {
+            if (!seen[b & 0xFF] && queryable(b)) {
+                seen[b & 0xFF] = true;
+                distinct++;
+            }
+        }
+        byte[] alphabet = new byte[distinct];
+        distinct = 0;
+        for (int b = 0; b < 256; b++) {
+            if (seen[b]) {
+                alphabet[distinct++] = (byte) b;
+            }
+        }
+        return alphabet;
+    }
+
+    private static boolean queryable(byte b) {
+        return b != '\n' && b != '\r' && b != FMIndex.TERMINATOR;
+    }
+
+    /**
+     * Read text[p, p + length) at a random position p into 'query',
+     * retrying positions whose substring cannot be a query line
+     */
+    private static void readSubstring(RandomAccessFile text, long size, SplittableRandom random,
+            byte[] query, int length) throws IOException {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            text.seek(random.nextLong(size - length + 1));
+            text.readFully(query, 0, length);
+            boolean valid = true;
+            for (int i = 0; i < length && valid; i++) {
+                valid = queryable(query[i]);
+            }
+            if (valid) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No substring of " + length + " characters without newlines or '"
+                + FMIndex.TERMINATOR + "' found in the text");
     }
 }
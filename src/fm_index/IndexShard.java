@@ -0,0 +1,88 @@
+package fm_index;
+
+import java.util.Arrays;
+
+/**
+ * Written by the group.
+ * Shard that lives in this JVM. It indexes the text range
+ * [start, end) it owns plus the next maxPatternLength - 1 characters, so
+ * every occurrence of a pattern of up to maxPatternLength characters that
+ * starts in the owned range is found here in full. Occurrences that start
+ * in the extra characters belong to the next shard and are dropped.
+ */
+public class IndexShard implements Shard {
+
+    FMIndex fmi;
+    long start;
+    int ownedLength;
+    int maxPatternLength;
+    // Indexed characters after the owned range, used to discount
+    // the occurrences that start there
+    String overlap;
+
+    public IndexShard(String text, int start, int end, int maxPatternLength, int blockSize) {
+        this(text.substring(start, Math.min(text.length(), end + maxPatternLength - 1)), (long) start, end - start,
+                maxPatternLength, blockSize);
+    }
+
+    /**
+     * Written by the group.
+     * Shard of a text that is not held in memory as a whole
+     * @param shardText The owned characters followed by the next
+     *                  maxPatternLength - 1 characters of the text, or
+     *                  fewer at its end
+     * @param start Position of the shard in the text
+     * @param ownedLength
+     * @param maxPatternLength
+     * @param blockSize
+     */
+    public IndexShard(String shardText, long start, int ownedLength, int maxPatternLength, int blockSize) {
+        this.start = start;
+        this.ownedLength = ownedLength;
+        this.maxPatternLength = maxPatternLength;
+        this.overlap = shardText.substring(ownedLength);
+        this.fmi = new FMIndex(shardText + "$", blockSize);
+    }
+
+    @Override
+    public int count(String query) {
+        checkLength(query);
+        int[] range = fmi.search(query);
+        int count = Math.max(0, range[1] - range[0] + 1);
+
+        // The overlap is shorter than a pattern, so a plain scan is enough
+        for (int i = overlap.indexOf(query); i >= 0; i = overlap.indexOf(query, i + 1)) {
+            count--;
+        }
+        return count;
+    }
+
+    @Override
+    public long[] locate(String query) {
+        checkLength(query);
+        int[] local = fmi.locate(query);
+        long[] positions = new long[local.length];
+        int owned = 0;
+        for (int position : local) {
+            if (position < ownedLength) {
+                positions[owned++] = start + position;
+            }
+        }
+        return Arrays.copyOf(positions, owned);
+    }
+
+    private void checkLength(String query) {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Query must not be empty");
+        }
+        if (query.length() > maxPatternLength) {
+            throw new IllegalArgumentException(String.format(
+                    "Query of length %d is longer than the shard overlap allows (%d)",
+                    query.length(), maxPatternLength));
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,305 @@
+package fm_index;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Written by the group.
+ * Command line tool to build an index once and run query files against it.
+ *
+ * Usage:
+ *   IndexTool build textFile indexFile [blockSize]
+ *   IndexTool query indexFile queryFile [options]
+ *   IndexTool locate indexFile queryFile [options]
+ *   IndexTool stats indexFile [blockSize]
+ *
+ * Options:
+ *   -format tsv|json   Output format, one line per query (default tsv)
+ *   -out file          Write to a file instead of standard output
+ *   -threads n         Threads that run queries (default: number of cores)
+ *   -batch n           Queries per batch (default 4096)
+ *   -blockSize n       Block size of the loaded index (default 1000)
+ *
+ * Texts, query files and output are read and written as ISO-8859-1, one
+ * character per byte, like ShardServer does. Every line of a query file is
+ * one query. The output has one line per query, in the order of the file:
+ *   query:  query TAB count
+ *   locate: query TAB count TAB positions separated by commas
+ * or the same fields as a JSON object per line.
+ *
+ * The query file is read in batches. Every batch is answered and rendered
+ * to text on a worker thread, and the main thread only writes the finished
+ * batches in order, so the file is never held in memory at once: at most
+ * two batches per thread are in flight. The counts of a batch come from
+ * one BatchSearch, so queries sharing a suffix share its search steps.
+ */
+public class IndexTool {
+
+    static final int DEFAULT_BLOCK_SIZE = 1000;
+    static final int DEFAULT_BATCH_SIZE = 4096;
+    static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private static final String USAGE = "Usage:\n"
+            + "\tIndexTool build textFile indexFile [blockSize]\n"
+            + "\tIndexTool query indexFile queryFile [-format tsv|json] [-out file] [-threads n] [-batch n] [-blockSize n]\n"
+            + "\tIndexTool locate indexFile queryFile [-format tsv|json] [-out file] [-threads n] [-batch n] [-blockSize n]\n"
+            + "\tIndexTool stats indexFile [blockSize]";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        try {
+            switch (args[0]) {
+                case "build":
+                    build(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BLOCK_SIZE);
+                    break;
+                case "query":
+                case "locate":
+                    runQueries(args);
+                    break;
+                case "stats":
+                    stats(args[1], args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BLOCK_SIZE);
+                    break;
+                default:
+                    System.err.println(USAGE);
+                    System.exit(1);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Build the index of a text file and save it. The terminator is
+     * appended if the text does not end with it.
+     */
+    static void build(String textFile, String indexFile, int blockSize) throws IOException {
+        String text = ShardServer.readText(textFile);
+        if (text.isEmpty() || text.charAt(text.length() - 1) != FMIndex.TERMINATOR) {
+            text += FMIndex.TERMINATOR;
+        }
+        long start = System.currentTimeMillis();
+        FMIndex index = new FMIndex(text, blockSize);
+        long end = System.currentTimeMillis();
+        index.save(indexFile);
+        System.err.println("Built " + indexFile + " (" + text.length() + " characters) in " + (end - start) + " ms");
+    }
+
+    static void stats(String indexFile, int blockSize) throws IOException {
+        FMIndex index = FMIndex.load(indexFile, blockSize);
+        System.out.println("Characters: " + index.n);
+        System.out.println("Alphabet size: " + index.wt.root.alphabet.length);
+        System.out.println("SA samples: " + index.saSamples.length());
+        System.out.print(index.memoryReport());
+    }
+
+    private static void runQueries(String[] args) throws IOException, InterruptedException {
+        boolean locate = args[0].equals("locate");
+        String indexFile = args[1];
+        String queryFile = args[2];
+        boolean json = false;
+        String outFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int blockSize = DEFAULT_BLOCK_SIZE;
+        for (int i = 3; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-format":
+                    if (!args[i + 1].equals("tsv") && !args[i + 1].equals("json")) {
+                        throw new IllegalArgumentException("Unknown format " + args[i + 1]);
+                    }
+                    json = args[i + 1].equals("json");
+                    break;
+                case "-out":
+                    outFile = args[i + 1];
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-batch":
+                    batchSize = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-blockSize":
+                    blockSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        FMIndex index = FMIndex.load(indexFile, blockSize);
+        OutputStream stream = outFile == null ? System.out : new FileOutputStream(outFile);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     new FileInputStream(queryFile), StandardCharsets.ISO_8859_1), OUTPUT_BUFFER_SIZE);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     stream, StandardCharsets.ISO_8859_1), OUTPUT_BUFFER_SIZE)) {
+            long start = System.nanoTime();
+            long queries = runQueries(index, reader, writer, locate, json, threads, batchSize);
+            writer.flush();
+            long end = System.nanoTime();
+            System.err.println(String.format("%d queries in %d ms (%.0f queries/s)",
+                    queries, (end - start) / 1000000, queries * 1e9 / Math.max(1, end - start)));
+        }
+    }
+
+    /**
+     * Answer every line of 'reader' and write the results to 'writer' in order
+     * @return The number of queries
+     */
+    static long runQueries(FMIndex index, BufferedReader reader, Writer writer, boolean locate,
+            boolean json, int threads, int batchSize) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<CharSequence>> inFlight = new ArrayDeque<>();
+        long queries = 0;
+        try {
+            while (true) {
+                List<String> batch = new ArrayList<>(batchSize);
+                String line;
+                while (batch.size() < batchSize && (line = reader.readLine()) != null) {
+                    batch.add(line);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                queries += batch.size();
+                inFlight.add(pool.submit(() -> answerBatch(index, batch, locate, json)));
+                // Write the oldest batch once enough work is queued behind it
+                if (inFlight.size() >= 2 * threads) {
+                    writer.append(getResult(inFlight.poll()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writer.append(getResult(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return queries;
+    }
+
+    private static CharSequence getResult(Future<CharSequence> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Output lines of one batch. Built with StringBuilder appends only,
+     * since String.format would cost more than many of the queries.
+     */
+    static CharSequence answerBatch(FMIndex index, List<String> batch, boolean locate, boolean json) {
+        StringBuilder out = new StringBuilder(batch.size() * 32);
+        BatchSearch.Result counts = locate ? null : new BatchSearch(index).search(batch);
+        for (int q = 0; q < batch.size(); q++) {
+            String query = batch.get(q);
+            int[] positions = null;
+            int count;
+            if (locate) {
+                positions = index.locate(query);
+                Arrays.sort(positions);
+                count = positions.length;
+            } else {
+                count = counts.count(q);
+            }
+
+            if (json) {
+                out.append("{\"query\":");
+                appendJsonString(out, query);
+                out.append(",\"count\":").append(count);
+                if (locate) {
+                    out.append(",\"positions\":[");
+                    for (int i = 0; i < positions.length; i++) {
+                        if (i > 0) {
+                            out.append(',');
+                        }
+                        out.append(positions[i]);
+                    }
+                    out.append(']');
+                }
+                out.append("}\n");
+            } else {
+                appendTsvField(out, query);
+                out.append('\t').append(count);
+                if (locate) {
+                    out.append('\t');
+                    for (int i = 0; i < positions.length; i++) {
+                        if (i > 0) {
+                            out.append(',');
+                        }
+                        out.append(positions[i]);
+                    }
+                }
+                out.append('\n');
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Tabs and backslashes in a query would break the columns, so they
+     * are escaped like in the MySQL and PostgreSQL text formats
+     */
+    private static void appendTsvField(StringBuilder out, String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\t') {
+                out.append("\\t");
+            } else if (c == '\\') {
+                out.append("\\\\");
+            } else if (c == '\r') {
+                out.append("\\r");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Quoted JSON string. Everything outside printable ASCII is escaped,
+     * so the output is valid JSON whatever the bytes of the query.
+     */
+    private static void appendJsonString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20 || c >= 0x7F) {
+                out.append("\\u");
+                String hex = Integer.toHexString(c);
+                for (int pad = hex.length(); pad < 4; pad++) {
+                    out.append('0');
+                }
+                out.append(hex);
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
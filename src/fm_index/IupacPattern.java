@@ -0,0 +1,87 @@
+package fm_index;
+
+import java.util.TreeSet;
+
+/**
+ * Written by the group.
+ * Degenerate DNA patterns: every position of the pattern allows a set of
+ * characters instead of a single one. A position is either
+ *  - an IUPAC nucleotide code: A, C, G, T, U (same as T), R = [AG],
+ *    Y = [CT], S = [CG], W = [AT], K = [GT], M = [AC], B = [CGT],
+ *    D = [AGT], H = [ACT], V = [ACG], N = [ACGT]
+ *  - a character class in brackets, such as [ACG]. Codes inside it are
+ *    expanded too, so [RT] is [AGT].
+ *  - any other character, which only allows itself
+ */
+public class IupacPattern {
+
+    private IupacPattern() {
+    }
+
+    /**
+     * Characters an IUPAC code stands for
+     * @param code
+     * @return The characters in increasing order, or just 'code' if it is not an IUPAC code
+     */
+    static String expand(char code) {
+        switch (code) {
+            case 'U': return "T";
+            case 'R': return "AG";
+            case 'Y': return "CT";
+            case 'S': return "CG";
+            case 'W': return "AT";
+            case 'K': return "GT";
+            case 'M': return "AC";
+            case 'B': return "CGT";
+            case 'D': return "AGT";
+            case 'H': return "ACT";
+            case 'V': return "ACG";
+            case 'N': return "ACGT";
+            default: return String.valueOf(code);
+        }
+    }
+
+    /**
+     * Allowed characters at every position of 'pattern'
+     * @param pattern
+     * @return One array per position, sorted and without repeats
+     * @throws IllegalArgumentException If a class is not closed or is empty
+     */
+    public static char[][] parse(String pattern) {
+        char[][] positions = new char[pattern.length()][];
+        int count = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            TreeSet<Character> allowed = new TreeSet<>();
+            if (pattern.charAt(i) == '[') {
+                int close = pattern.indexOf(']', i + 1);
+                if (close == -1) {
+                    throw new IllegalArgumentException("Unclosed '[' at " + i + " in " + pattern);
+                }
+                if (close == i + 1) {
+                    throw new IllegalArgumentException("Empty class at " + i + " in " + pattern);
+                }
+                for (int j = i + 1; j < close; j++) {
+                    addAll(allowed, expand(pattern.charAt(j)));
+                }
+                i = close;
+            } else {
+                addAll(allowed, expand(pattern.charAt(i)));
+            }
+            char[] symbols = new char[allowed.size()];
+            int index = 0;
+            for (char symbol : allowed) {
+                symbols[index++] = symbol;
+            }
+            positions[count++] = symbols;
+        }
+        char[][] result = new char[count][];
+        System.arraycopy(positions, 0, result, 0, count);
+        return result;
+    }
+
+    private static void addAll(TreeSet<Character> set, String symbols) {
+        for (int i = 0; i < symbols.length(); i++) {
+            set.add(symbols.charAt(i));
+        }
+    }
+}
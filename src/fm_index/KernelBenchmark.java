@@ -0,0 +1,54 @@
+package fm_index;
+
+import java.util.Random;
+
+/**
+ * Written by the group.
+ * Times the plain Kernels against Kernels.INSTANCE on random data, see
+ * Kernels for how to run it with the vector version. Usage:
+ *   KernelBenchmark [length] [alphabet size]
+ */
+public class KernelBenchmark {
+
+    static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 24;
+        int sigma = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Random random = new Random(42);
+        byte[] codes = new byte[length];
+        char[] chars = new char[length];
+        boolean[] bits = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            codes[i] = (byte) random.nextInt(sigma);
+            chars[i] = (char) ('A' + codes[i]);
+            bits[i] = random.nextBoolean();
+        }
+
+        Kernels scalar = new Kernels();
+        Kernels selected = Kernels.INSTANCE;
+        System.out.println(String.format("%d values, alphabet of %d, kernels: %s", length, sigma, selected.name()));
+        for (Kernels kernels : new Kernels[]{scalar, selected}) {
+            System.out.println(kernels.name());
+            boolean[] out = new boolean[length];
+            report("\thistogram", () -> kernels.histogram(codes, 0, length, new int[sigma]));
+            report("\tgreaterOrEqual bytes", () -> kernels.greaterOrEqual(codes, 0, length, sigma / 2, out));
+            report("\tgreaterOrEqual chars", () -> kernels.greaterOrEqual(chars, 0, length, (char) ('A' + sigma / 2), out));
+            report("\tcountFalse", () -> kernels.countFalse(bits, 0, length));
+        }
+    }
+
+    /**
+     * Print the best time of ROUNDS runs, after one run to warm up
+     */
+    private static void report(String label, Runnable kernel) {
+        kernel.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            kernel.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%s: %.2f ms", label, best / 1e6));
+    }
+}
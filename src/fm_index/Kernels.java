@@ -0,0 +1,86 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * Loops over whole arrays that construction and rank spend most of their
+ * time in. This class is the plain Java version. INSTANCE is chosen once,
+ * when the class is loaded: VectorKernels, which uses the incubating
+ * jdk.incubator.vector module, if it was compiled and the JVM was started
+ * with --add-modules jdk.incubator.vector, and this class otherwise.
+ * Setting the system property fm_index.vector to false forces this class.
+ *
+ * VectorKernels lives in the src-vector source folder, so compiling src
+ * needs no extra flags:
+ *   javac -d out src/fm_index/*.java
+ *   javac --add-modules jdk.incubator.vector -cp out -d out src-vector/fm_index/*.java
+ *   java --add-modules jdk.incubator.vector -cp out fm_index.KernelBenchmark
+ */
+public class Kernels {
+
+    static final Kernels INSTANCE = load();
+
+    private static Kernels load() {
+        if (!Boolean.parseBoolean(System.getProperty("fm_index.vector", "true"))) {
+            return new Kernels();
+        }
+        try {
+            return (Kernels) Class.forName("fm_index.VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+            // Not compiled, module not added, or no vector registers
+            return new Kernels();
+        }
+    }
+
+    /**
+     * Which implementation this is, for reports and benchmarks
+     * @return
+     */
+    String name() {
+        return "scalar";
+    }
+
+    /**
+     * Add the number of occurrences of every code in codes[from, to) to
+     * 'counts'
+     * @param codes Codes read as unsigned, smaller than counts.length
+     * @param from
+     * @param to
+     * @param counts
+     */
+    void histogram(byte[] codes, int from, int to, int[] counts) {
+        for (int i = from; i < to; i++) {
+            counts[codes[i] & 0xFF]++;
+        }
+    }
+
+    /**
+     * out[i] = codes[i] >= split, codes read as unsigned, for i in [from, to)
+     */
+    void greaterOrEqual(byte[] codes, int from, int to, int split, boolean[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = (codes[i] & 0xFF) >= split;
+        }
+    }
+
+    /**
+     * out[i] = s[i] >= split for i in [from, to)
+     */
+    void greaterOrEqual(char[] s, int from, int to, char split, boolean[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = s[i] >= split;
+        }
+    }
+
+    /**
+     * Number of false values in bits[from, to)
+     */
+    int countFalse(boolean[] bits, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (!bits[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,121 @@
+package fm_index;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Written by the group.
+ * Histogram of latencies in nanoseconds that many threads can record into
+ * at once. Values below 64 have their own bucket, larger ones share a
+ * bucket with the values that agree with them in the 7 highest bits, so a
+ * percentile is off by less than 1/64 of its value. The buckets take a
+ * fixed 30 KB whatever the number of values.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUMBER_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUMBER_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one latency
+     * @param nanos Negative values count as 0
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(nanos));
+        total.incrementAndGet();
+        long previous;
+        while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos)) {
+            // Another thread raised the maximum in between, try again
+        }
+    }
+
+    /**
+     * Record one latency measured by a caller that waits for every answer
+     * before sending the next request, correcting for coordinated
+     * omission: while a request took longer than 'expectedInterval', the
+     * requests that would have been sent in the meantime were held back,
+     * so they are recorded too, with the latencies they would have seen.
+     * @param nanos
+     * @param expectedInterval Time between two requests of the caller,
+     *                         0 or less to record 'nanos' alone
+     */
+    public void recordCorrected(long nanos, long expectedInterval) {
+        record(nanos);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missed = nanos - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+            record(missed);
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        long top = value >>> (exponent - SUB_BUCKET_BITS);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) (top - SUB_BUCKETS);
+    }
+
+    /**
+     * Largest value that falls in 'bucket'
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Smallest recorded latency that at least 'percentile' percent of
+     * the values do not exceed, rounded up to the end of its bucket
+     * @param percentile Between 0 and 100
+     * @return The latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long recorded = 0;
+        for (int bucket = 0; bucket < NUMBER_BUCKETS; bucket++) {
+            recorded += counts.get(bucket);
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < NUMBER_BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Count and the usual percentiles, in microseconds
+     * @return
+     */
+    public String summary() {
+        return String.format("count=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count(), percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3,
+                percentile(99.9) / 1e3, max() / 1e3);
+    }
+}
@@ -0,0 +1,178 @@
+package fm_index;
+
+import java.util.HashMap;
+
+/**
+ * Written by the group.
+ * Longest common prefix array of an FMIndex: lcp(i) is the length of the
+ * common prefix of the suffixes of rows i - 1 and i, 0 for row 0 and for
+ * row n. Values are stored one byte per row; values of SATURATED and more
+ * are kept exactly in a map, since long repeats are rare in most texts.
+ *
+ * The minimum of every BLOCK and SUPER_BLOCK rows is kept too, so finding
+ * the enclosing interval of rows that share k characters skips whole
+ * blocks instead of reading the rows one by one.
+ */
+public class LcpArray {
+
+    static final int SATURATED = 255;
+    static final int BLOCK = 64;
+    static final int SUPER_BLOCK = 4096;
+
+    int n;
+    byte[] lcp;
+    HashMap<Integer, Integer> large = new HashMap<>();
+    // Minimum of every block and super block, saturated like lcp
+    byte[] blockMin;
+    byte[] superBlockMin;
+
+    /**
+     * Compute the LCP array of the text of 'index' with Kasai's algorithm.
+     * The text and the full suffix array are recovered first with one LF
+     * walk over the whole index, so this takes 10 bytes per character
+     * while it runs. The text must end with the only terminator, as
+     * FMIndex.locate also requires.
+     * @param index
+     */
+    public LcpArray(FMIndex index) {
+        n = index.n;
+        int[] sa = new int[n];
+        int[] rank = new int[n];
+        char[] text = new char[n];
+        // The suffix made of the terminator alone is the first row that
+        // starts with it. Row 0 only when no character sorts before it,
+        // which spaces and most punctuation do.
+        int row = index.c.occurrence.get(FMIndex.TERMINATOR);
+        for (int position = n - 1; position >= 0; position--) {
+            sa[row] = position;
+            rank[position] = row;
+            char previous = index.wt.access(row);
+            text[position == 0 ? n - 1 : position - 1] = previous;
+            row = index.c.occurrence.get(previous) + index.wt.rank(previous, row);
+        }
+
+        lcp = new byte[n];
+        int h = 0;
+        for (int position = 0; position < n; position++) {
+            int r = rank[position];
+            if (r == 0) {
+                h = 0;
+                continue;
+            }
+            int other = sa[r - 1];
+            while (position + h < n && other + h < n && text[position + h] == text[other + h]) {
+                h++;
+            }
+            set(r, h);
+            if (h > 0) {
+                h--;
+            }
+        }
+
+        blockMin = minima(BLOCK);
+        superBlockMin = minima(SUPER_BLOCK);
+    }
+
+    private void set(int row, int value) {
+        if (value >= SATURATED) {
+            lcp[row] = (byte) SATURATED;
+            large.put(row, value);
+        } else {
+            lcp[row] = (byte) value;
+        }
+    }
+
+    private byte[] minima(int size) {
+        byte[] minima = new byte[n / size];
+        for (int block = 0; block < minima.length; block++) {
+            int min = SATURATED;
+            for (int i = block * size; i < (block + 1) * size; i++) {
+                min = Math.min(min, lcp[i] & 0xFF);
+            }
+            minima[block] = (byte) min;
+        }
+        return minima;
+    }
+
+    /**
+     * @param row 0 to n
+     * @return The common prefix length of rows 'row' - 1 and 'row'
+     */
+    int get(int row) {
+        if (row == 0 || row == n) {
+            return 0;
+        }
+        int value = lcp[row] & 0xFF;
+        return value == SATURATED ? large.get(row) : value;
+    }
+
+    /**
+     * Last row t <= 'row' with get(t) < k, so that the rows t to 'row' all
+     * share k characters
+     * @param row
+     * @param k At least 1
+     * @return
+     */
+    int previousSmaller(int row, int k) {
+        int t = row;
+        while (t > 0) {
+            // A saturated minimum means every value is at least SATURATED,
+            // so the comparison is exact whenever min >= k
+            if ((t + 1) % SUPER_BLOCK == 0 && (superBlockMin[t / SUPER_BLOCK] & 0xFF) >= k) {
+                t -= SUPER_BLOCK;
+            } else if ((t + 1) % BLOCK == 0 && (blockMin[t / BLOCK] & 0xFF) >= k) {
+                t -= BLOCK;
+            } else if (get(t) < k) {
+                return t;
+            } else {
+                t--;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * First row t >= 'row' with get(t) < k, so that the rows 'row' - 1 to
+     * t - 1 all share k characters
+     * @param row
+     * @param k At least 1
+     * @return A row up to n
+     */
+    int nextSmaller(int row, int k) {
+        int t = row;
+        while (t < n) {
+            if (t % SUPER_BLOCK == 0 && t / SUPER_BLOCK < superBlockMin.length
+                    && (superBlockMin[t / SUPER_BLOCK] & 0xFF) >= k) {
+                t += SUPER_BLOCK;
+            } else if (t % BLOCK == 0 && t / BLOCK < blockMin.length && (blockMin[t / BLOCK] & 0xFF) >= k) {
+                t += BLOCK;
+            } else if (get(t) < k) {
+                return t;
+            } else {
+                t++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Smallest interval of rows around [s, e] whose rows share fewer
+     * characters than those of [s, e]: its parent in the suffix tree
+     * @param s First row, 0-based
+     * @param e Last row, 0-based
+     * @return {s', e', k}: the rows and the number of characters they share
+     */
+    int[] parent(int s, int e) {
+        int k = Math.max(get(s), get(e + 1));
+        if (k == 0) {
+            return new int[]{0, n - 1, 0};
+        }
+        return new int[]{previousSmaller(s, k), nextSmaller(e + 1, k) - 1, k};
+    }
+
+    public long sizeInBytes() {
+        return MemoryReport.objectBytes(4, 4) + MemoryReport.arrayBytes(lcp.length, 1)
+                + MemoryReport.hashMapBytes(large) + MemoryReport.arrayBytes(blockMin.length, 1)
+                + MemoryReport.arrayBytes(superBlockMin.length, 1);
+    }
+}
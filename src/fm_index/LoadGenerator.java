@@ -0,0 +1,424 @@
+package fm_index;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Written by the group.
+ * Replays a query log against an FMIndex with several threads and reports
+ * throughput, latency percentiles and how the slow requests line up with
+ * garbage collection pauses.
+ *
+ * Usage:
+ *   LoadGenerator index logFile [options]
+ *
+ * The index is a file written by IndexTool build, or a text that is
+ * indexed first. Every line of the log is one request, either
+ *   query                       an operation drawn from -mix
+ *   count TAB query
+ *   locate TAB query
+ *   extract TAB start TAB length
+ * A query drawn as an extract reads as many characters as the query has
+ * at a random position. The log is replayed from the start again until
+ * -requests requests have been sent.
+ *
+ * Options:
+ *   -rate n            Requests per second, 0 for as fast as possible (default 0)
+ *   -mode open|closed  Open or closed loop (default closed)
+ *   -threads n         Concurrent requests (default: number of cores)
+ *   -requests n        Requests to send (default: the lines of the log)
+ *   -warmup n          Requests sent first and not measured (default 1000)
+ *   -mix c:l:e         Weights of count, locate and extract (default 80:15:5)
+ *   -slowMs n          Requests slower than this are checked against GC pauses (default 1)
+ *   -seed n            Seed of the operation mix (default 1)
+ *   -blockSize n       Block size of the index (default 1000)
+ *
+ * In open loop, request i is due at start + i / rate whatever happened
+ * before, and its latency is measured from when it was due, so a stall
+ * counts against every request it delays. In closed loop every thread
+ * waits for its answer before sending the next request, at rate / threads
+ * per thread, and the latencies are corrected for coordinated omission
+ * with LatencyHistogram.recordCorrected; without a rate there is nothing
+ * to correct against. Service times, from the moment a request was sent,
+ * are reported in both modes.
+ *
+ * GC pauses come from the collector notifications, with millisecond
+ * resolution. Concurrent collector cycles are not pauses and are left out.
+ */
+public class LoadGenerator {
+
+    static final int COUNT = 0;
+    static final int LOCATE = 1;
+    static final int EXTRACT = 2;
+    static final String[] OPERATIONS = {"count", "locate", "extract"};
+    // Slow requests kept for the GC overlap
+    static final int MAX_SLOW = 1 << 20;
+
+    private static final String USAGE = "Usage:\n"
+            + "\tLoadGenerator index logFile [-rate n] [-mode open|closed] [-threads n] [-requests n]"
+            + " [-warmup n] [-mix c:l:e] [-slowMs n] [-seed n] [-blockSize n]";
+
+    /**
+     * One line of the log
+     */
+    static class Request {
+        final int operation;
+        final String query;
+        final int start;
+        final int length;
+
+        Request(int operation, String query, int start, int length) {
+            this.operation = operation;
+            this.query = query;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Pauses announced by the collectors, as {start, end} in milliseconds
+     * of JVM uptime
+     */
+    static class GcMonitor implements NotificationListener {
+        final List<long[]> pauses = new ArrayList<>();
+        final List<NotificationEmitter> emitters = new ArrayList<>();
+
+        void start() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    NotificationEmitter emitter = (NotificationEmitter) collector;
+                    emitter.addNotificationListener(this, null, null);
+                    emitters.add(emitter);
+                }
+            }
+        }
+
+        void stop() throws Exception {
+            for (NotificationEmitter emitter : emitters) {
+                emitter.removeNotificationListener(this);
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                    (CompositeData) notification.getUserData());
+            if (info.getGcName().contains("Concurrent")) {
+                return;
+            }
+            synchronized (pauses) {
+                pauses.add(new long[]{info.getGcInfo().getStartTime(), info.getGcInfo().getEndTime()});
+            }
+        }
+    }
+
+    FMIndex index;
+    Request[] log;
+    boolean open;
+    double rate;
+    int threads;
+    long slowNanos;
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram service = new LatencyHistogram();
+    final LatencyHistogram[] byOperation = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+    // {start, end} in System.nanoTime of the requests slower than slowNanos
+    final ConcurrentLinkedQueue<long[]> slow = new ConcurrentLinkedQueue<>();
+    final AtomicInteger slowCount = new AtomicInteger();
+    final AtomicLong errors = new AtomicLong();
+    // Defeats dead code elimination of the answers
+    final AtomicLong checksum = new AtomicLong();
+
+    LoadGenerator(FMIndex index, Request[] log, boolean open, double rate, int threads, long slowNanos) {
+        this.index = index;
+        this.log = log;
+        this.open = open;
+        this.rate = rate;
+        this.threads = threads;
+        this.slowNanos = slowNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        double rate = 0;
+        boolean open = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long requests = -1;
+        long warmup = 1000;
+        int[] mix = {80, 15, 5};
+        double slowMs = 1;
+        long seed = 1;
+        int blockSize = IndexTool.DEFAULT_BLOCK_SIZE;
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "-rate":
+                        rate = Double.parseDouble(value);
+                        break;
+                    case "-mode":
+                        if (!value.equals("open") && !value.equals("closed")) {
+                            throw new IllegalArgumentException("Unknown mode " + value);
+                        }
+                        open = value.equals("open");
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "-requests":
+                        requests = Long.parseLong(value);
+                        break;
+                    case "-warmup":
+                        warmup = Long.parseLong(value);
+                        break;
+                    case "-mix":
+                        String[] weights = value.split(":");
+                        if (weights.length != 3) {
+                            throw new IllegalArgumentException("The mix has three weights, count:locate:extract");
+                        }
+                        for (int w = 0; w < 3; w++) {
+                            mix[w] = Integer.parseInt(weights[w]);
+                        }
+                        break;
+                    case "-slowMs":
+                        slowMs = Double.parseDouble(value);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "-blockSize":
+                        blockSize = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (open && rate <= 0) {
+                throw new IllegalArgumentException("Open loop needs a rate");
+            }
+            if (threads < 1 || mix[0] + mix[1] + mix[2] <= 0) {
+                throw new IllegalArgumentException("Needs at least one thread and one operation in the mix");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        FMIndex index = loadIndex(args[0], blockSize);
+        Request[] log = readLog(args[1], mix, index.n, seed);
+        if (log.length == 0) {
+            System.err.println(args[1] + " has no requests");
+            System.exit(1);
+        }
+        if (requests < 0) {
+            requests = log.length;
+        }
+
+        if (warmup > 0) {
+            System.out.println("Warming up with " + warmup + " requests");
+            new LoadGenerator(index, log, false, 0, threads, Long.MAX_VALUE).run(warmup);
+        }
+        LoadGenerator generator = new LoadGenerator(index, log, open, rate, threads, (long) (slowMs * 1e6));
+        System.out.println(String.format("Sending %d requests, %s loop, %d threads, %s", requests,
+                open ? "open" : "closed", threads, rate > 0 ? String.format("%.0f requests/s", rate) : "no rate"));
+        System.out.print(generator.measure(requests));
+    }
+
+    static FMIndex loadIndex(String filename, int blockSize) throws IOException {
+        if (FMIndex.isSaved(filename)) {
+            return FMIndex.load(filename, blockSize);
+        }
+        String text = ShardServer.readText(filename);
+        if (text.isEmpty() || text.charAt(text.length() - 1) != FMIndex.TERMINATOR) {
+            text += FMIndex.TERMINATOR;
+        }
+        return new FMIndex(text, blockSize);
+    }
+
+    /**
+     * Parse the log, drawing the operation of untagged lines from 'mix'
+     * @param n Length of the indexed text, for the extracts
+     */
+    static Request[] readLog(String filename, int[] mix, int n, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int total = mix[0] + mix[1] + mix[2];
+        List<Request> requests = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(filename), StandardCharsets.ISO_8859_1)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length == 2 && fields[0].equals("count")) {
+                requests.add(new Request(COUNT, fields[1], 0, 0));
+            } else if (fields.length == 2 && fields[0].equals("locate")) {
+                requests.add(new Request(LOCATE, fields[1], 0, 0));
+            } else if (fields.length == 3 && fields[0].equals("extract")) {
+                requests.add(new Request(EXTRACT, null, Integer.parseInt(fields[1]), Integer.parseInt(fields[2])));
+            } else {
+                int draw = random.nextInt(total);
+                if (draw < mix[0]) {
+                    requests.add(new Request(COUNT, line, 0, 0));
+                } else if (draw < mix[0] + mix[1]) {
+                    requests.add(new Request(LOCATE, line, 0, 0));
+                } else {
+                    int length = Math.min(line.length(), n);
+                    requests.add(new Request(EXTRACT, null, random.nextInt(n - length + 1), length));
+                }
+            }
+        }
+        return requests.toArray(new Request[0]);
+    }
+
+    /**
+     * Run 'requests' requests with GC monitoring and describe the results
+     */
+    String measure(long requests) throws Exception {
+        GcMonitor gc = new GcMonitor();
+        gc.start();
+        long startNanos = System.nanoTime();
+        long startUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        run(requests);
+        long endNanos = System.nanoTime();
+        // Notifications are delivered on another thread, after the pause
+        Thread.sleep(100);
+        gc.stop();
+
+        double seconds = (endNanos - startNanos) / 1e9;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Throughput: %.0f requests/s (%d requests in %.2f s, %d errors)%n",
+                requests / seconds, requests, seconds, errors.get()));
+        report.append(open || rate > 0 ? "Latency (corrected): " : "Latency (no rate, uncorrected): ")
+                .append(percentiles(latency)).append('\n');
+        report.append("Service time: ").append(percentiles(service)).append('\n');
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            if (byOperation[operation].count() > 0) {
+                report.append("\t").append(OPERATIONS[operation]).append(": ")
+                        .append(percentiles(byOperation[operation])).append('\n');
+            }
+        }
+
+        long paused = 0;
+        long longest = 0;
+        for (long[] pause : gc.pauses) {
+            paused += pause[1] - pause[0];
+            longest = Math.max(longest, pause[1] - pause[0]);
+        }
+        report.append(String.format("GC pauses: %d, %d ms in total (%.1f%% of the run), longest %d ms%n",
+                gc.pauses.size(), paused, 100.0 * paused / Math.max(1, seconds * 1000), longest));
+        int overlapping = 0;
+        for (long[] request : slow) {
+            double start = startUptime + (request[0] - startNanos) / 1e6;
+            double end = startUptime + (request[1] - startNanos) / 1e6;
+            for (long[] pause : gc.pauses) {
+                if (start <= pause[1] && pause[0] <= end) {
+                    overlapping++;
+                    break;
+                }
+            }
+        }
+        report.append(String.format("Requests slower than %.1f ms: %d, %d of them during a GC pause%s%n",
+                slowNanos / 1e6, slowCount.get(), overlapping,
+                slowCount.get() > MAX_SLOW ? " (first " + MAX_SLOW + " checked)" : ""));
+        return report.toString();
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", histogram.percentile(50) / 1e3,
+                histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+    }
+
+    /**
+     * Send 'requests' requests from 'threads' threads and wait for them
+     */
+    void run(long requests) throws InterruptedException {
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+        long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                // Closed loop threads share the rate
+                long threadInterval = interval * threads;
+                long due = System.nanoTime() - threadInterval;
+                long i;
+                while ((i = next.getAndIncrement()) < requests) {
+                    if (open) {
+                        due = start + i * interval;
+                    } else {
+                        // A late thread does not catch up on the requests it missed
+                        due = Math.max(due + threadInterval, System.nanoTime());
+                    }
+                    waitUntil(due);
+                    long sent = System.nanoTime();
+                    Request request = log[(int) (i % log.length)];
+                    execute(request);
+                    long done = System.nanoTime();
+                    if (open) {
+                        latency.record(done - due);
+                    } else {
+                        latency.recordCorrected(done - sent, threadInterval);
+                    }
+                    service.record(done - sent);
+                    byOperation[request.operation].record(done - sent);
+                    if (done - sent > slowNanos && slowCount.incrementAndGet() <= MAX_SLOW) {
+                        slow.add(new long[]{sent, done});
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private static void waitUntil(long due) {
+        long now;
+        while ((now = System.nanoTime()) < due) {
+            LockSupport.parkNanos(due - now);
+        }
+    }
+
+    private void execute(Request request) {
+        try {
+            switch (request.operation) {
+                case COUNT:
+                    checksum.addAndGet(index.count(request.query));
+                    break;
+                case LOCATE:
+                    checksum.addAndGet(index.locate(request.query).length);
+                    break;
+                default:
+                    checksum.addAndGet(index.extract(request.start, request.length).length());
+            }
+        } catch (RuntimeException ex) {
+            errors.incrementAndGet();
+        }
+    }
+}
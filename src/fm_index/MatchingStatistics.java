@@ -0,0 +1,189 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Written by the group.
+ * Matching statistics of a query against the text of an FMIndex, and the
+ * maximal exact matches that follow from them.
+ *
+ * The query is read backwards like in FMIndex.search. The range of rows
+ * of the current match is extended by the next query character; when
+ * that leaves no rows, the match is shortened from its right end by going
+ * to the parent range in the LcpArray, and the extension is tried again.
+ * Every extension adds one character and every widening removes at least
+ * one, so a query of length m takes at most 2m extensions: linear in rank
+ * operations, where searching every substring would be quadratic.
+ */
+public class MatchingStatistics {
+
+    /**
+     * Exact match of query[queryPosition, queryPosition + length) at
+     * text[textPosition, textPosition + length)
+     */
+    public static class Match {
+        final int queryPosition;
+        final int textPosition;
+        final int length;
+
+        Match(int queryPosition, int textPosition, int length) {
+            this.queryPosition = queryPosition;
+            this.textPosition = textPosition;
+            this.length = length;
+        }
+
+        public int getQueryPosition() {
+            return queryPosition;
+        }
+
+        public int getTextPosition() {
+            return textPosition;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + queryPosition + ", " + textPosition + ", " + length + ")";
+        }
+    }
+
+    FMIndex index;
+    LcpArray lcp;
+
+    /**
+     * Builds the LcpArray of 'index'
+     * @param index
+     */
+    public MatchingStatistics(FMIndex index) {
+        this.index = index;
+        System.out.println("\tComputing LCP array");
+        this.lcp = new LcpArray(index);
+    }
+
+    /**
+     * Matching statistics of 'query'
+     * @param query
+     * @return ms[i] is the length of the longest prefix of query[i..] that
+     *         occurs in the text
+     */
+    public int[] compute(String query) {
+        return compute(query, null);
+    }
+
+    /**
+     * @param query
+     * @param ranges If not null, gets the 0-based rows {s, e} of the match
+     *               of every query position
+     */
+    private int[] compute(String query, int[][] ranges) {
+        int m = query.length();
+        int[] ms = new int[m];
+        int s = 0;
+        int e = index.n - 1;
+        int length = 0;
+        for (int i = m - 1; i >= 0; i--) {
+            char q = query.charAt(i);
+            Integer start = index.c.occurrence.get(q);
+            while (true) {
+                if (start != null) {
+                    int s2 = start + index.wt.rank(q, s);
+                    int e2 = start + index.wt.rank(q, e + 1) - 1;
+                    if (s2 <= e2) {
+                        s = s2;
+                        e = e2;
+                        length++;
+                        break;
+                    }
+                }
+                if (length == 0) {
+                    // 'q' does not occur, the next match starts empty
+                    break;
+                }
+                int[] parent = lcp.parent(s, e);
+                s = parent[0];
+                e = parent[1];
+                length = parent[2];
+            }
+            ms[i] = length;
+            if (ranges != null) {
+                ranges[i] = new int[]{s, e};
+            }
+        }
+        return ms;
+    }
+
+    /**
+     * Every maximal exact match of at least 'minLength' characters: an
+     * occurrence of a query substring in the text that can be extended
+     * neither left nor right, because the next characters differ or one of
+     * the strings ends. For every query position the match of the
+     * matching statistics and its parent ranges down to 'minLength' give
+     * the occurrences that cannot be extended right; the BW character of a
+     * row tells if it can be extended left.
+     * @param query
+     * @param minLength At least 1
+     * @return The matches by query position, then by length, longest first
+     */
+    public List<Match> maximalMatches(String query, int minLength) {
+        if (minLength < 1) {
+            throw new IllegalArgumentException("The minimum length must be at least 1");
+        }
+        int[][] ranges = new int[query.length()][];
+        int[] ms = compute(query, ranges);
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < ms.length; i++) {
+            if (ms[i] < minLength) {
+                continue;
+            }
+            int s = ranges[i][0];
+            int e = ranges[i][1];
+            addLeftMaximal(matches, query, i, s, e, ms[i]);
+            while (true) {
+                int[] parent = lcp.parent(s, e);
+                if (parent[2] < minLength) {
+                    break;
+                }
+                // The rows added by the parent share exactly parent[2]
+                // characters with the query
+                addLeftMaximal(matches, query, i, parent[0], s - 1, parent[2]);
+                addLeftMaximal(matches, query, i, e + 1, parent[1], parent[2]);
+                s = parent[0];
+                e = parent[1];
+            }
+        }
+        return matches;
+    }
+
+    private void addLeftMaximal(List<Match> matches, String query, int i, int s, int e, int length) {
+        for (int row = s; row <= e; row++) {
+            if (i == 0 || index.wt.access(row) != query.charAt(i - 1)) {
+                matches.add(new Match(i, index.locateRow(row), length));
+            }
+        }
+    }
+
+    /**
+     * Longest substring of 'query' that occurs in the text
+     * @param query
+     * @return The first such substring in the query and one of its
+     *         occurrences, or null if no character of the query occurs
+     */
+    public Match longestCommonSubstring(String query) {
+        int[][] ranges = new int[query.length()][];
+        int[] ms = compute(query, ranges);
+        int best = -1;
+        for (int i = 0; i < ms.length; i++) {
+            if (ms[i] > 0 && (best == -1 || ms[i] > ms[best])) {
+                best = i;
+            }
+        }
+        if (best == -1) {
+            return null;
+        }
+        return new Match(best, index.locateRow(ranges[best][0]), ms[best]);
+    }
+}
@@ -0,0 +1,204 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Written by the group.
+ * Byte counts of the parts of an index, as an indented list. Unlike
+ * Runtime.totalMemory() - freeMemory() it only counts what the index
+ * references, and it can be computed at any time.
+ *
+ * Sizes follow the object layout of a 64 bit HotSpot JVM with compressed
+ * references and compact strings (the defaults for heaps under 32 GB):
+ * 12 byte object headers, 16 byte array headers, 4 byte references and
+ * everything padded to 8 bytes. Objects reachable from several parts, such
+ * as the text shared by the FMIndex, its C table and its suffix array, are
+ * counted once, by the first part that adds them.
+ */
+public class MemoryReport {
+
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+
+    private static class Line {
+        final int depth;
+        final String name;
+        final long bytes;
+        final String note;
+
+        Line(int depth, String name, long bytes, String note) {
+            this.depth = depth;
+            this.name = name;
+            this.bytes = bytes;
+            this.note = note;
+        }
+    }
+
+    private List<Line> lines = new ArrayList<>();
+    private IdentityHashMap<Object, String> counted = new IdentityHashMap<>();
+    private long totalBytes;
+
+    /**
+     * Add a part that is not shared with other parts
+     * @param depth Indentation of the line, 0 for the top level
+     * @param name
+     * @param bytes
+     */
+    public void add(int depth, String name, long bytes) {
+        lines.add(new Line(depth, name, bytes, null));
+        totalBytes += bytes;
+    }
+
+    /**
+     * Add a line that sums parts already added, without counting it again
+     * @param depth
+     * @param name
+     * @param bytes
+     */
+    public void addSubtotal(int depth, String name, long bytes) {
+        lines.add(new Line(depth, name, bytes, "included above"));
+    }
+
+    /**
+     * Add the part 'object' unless it was already added under another name
+     * @param depth
+     * @param name
+     * @param object
+     * @param bytes Size of 'object', only counted the first time
+     */
+    public void addShared(int depth, String name, Object object, long bytes) {
+        if (object == null) {
+            return;
+        }
+        String first = counted.get(object);
+        if (first != null) {
+            lines.add(new Line(depth, name, 0, "same object as " + first));
+            return;
+        }
+        counted.put(object, name);
+        add(depth, name, bytes);
+    }
+
+    /**
+     * Add a String with its character array
+     */
+    public void addString(int depth, String name, String s) {
+        addShared(depth, name, s, stringBytes(s));
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Total of the lines whose name starts with 'prefix'
+     * @param prefix
+     * @return
+     */
+    public long bytesOf(String prefix) {
+        long bytes = 0;
+        for (Line line : lines) {
+            if (line.name.startsWith(prefix) && line.note == null) {
+                bytes += line.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Line line : lines) {
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < line.depth; i++) {
+                name.append("  ");
+            }
+            name.append(line.name);
+            report.append(String.format("\t%-44s %14d %6.1f%%%s%n", name, line.bytes,
+                    totalBytes == 0 ? 0.0 : 100.0 * line.bytes / totalBytes,
+                    line.note == null ? "" : "  (" + line.note + ")"));
+        }
+        report.append(String.format("\t%-44s %14d%n", "Total", totalBytes));
+        return report.toString();
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Size of an object with the given fields, without what they reference
+     * @param references Number of reference fields
+     * @param primitiveBytes Bytes of the primitive fields
+     * @return
+     */
+    static long objectBytes(int references, int primitiveBytes) {
+        return align(OBJECT_HEADER + (long) REFERENCE * references + primitiveBytes);
+    }
+
+    /**
+     * Size of an array of 'length' elements of 'elementBytes' each
+     */
+    static long arrayBytes(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * Size of a String and its value array. Strings whose characters all
+     * fit in one byte are stored with one byte per character.
+     */
+    static long stringBytes(String s) {
+        if (s == null) {
+            return 0;
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) {
+            latin1 = s.charAt(i) <= 0xFF;
+        }
+        // value, hash, coder and hashIsZero
+        return objectBytes(1, 6) + arrayBytes(s.length(), latin1 ? 1 : 2);
+    }
+
+    /**
+     * Size of a HashMap built by put() with its table, entries and boxed
+     * keys and values. Boxes that Java caches (Boolean, and Character and
+     * Integer for small values) are shared by the whole JVM and not counted.
+     */
+    static long hashMapBytes(Map<?, ?> map) {
+        if (map == null) {
+            return 0;
+        }
+        // table, entrySet, keySet, values, size, modCount, threshold, loadFactor
+        long bytes = objectBytes(4, 16);
+        if (!map.isEmpty()) {
+            int capacity = 16;
+            while (map.size() > capacity * 3 / 4) {
+                capacity *= 2;
+            }
+            bytes += arrayBytes(capacity, REFERENCE);
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            // hash, key, value, next
+            bytes += objectBytes(3, 4);
+            bytes += boxBytes(entry.getKey()) + boxBytes(entry.getValue());
+        }
+        return bytes;
+    }
+
+    private static long boxBytes(Object value) {
+        if (value instanceof Character && (Character) value <= 127) {
+            return 0;
+        }
+        if (value instanceof Integer && (Integer) value >= -128 && (Integer) value <= 127) {
+            return 0;
+        }
+        if (value instanceof Boolean) {
+            return 0;
+        }
+        return objectBytes(0, 4);
+    }
+}
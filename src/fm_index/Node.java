@@ -1,6 +1,5 @@
 package fm_index;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,14 +13,75 @@ public class Node {
     Node right;
     boolean[] bitVector;
     int blockSize;
-    Block block;
+    RankSelectBitVector block;
     HashMap<Character, Boolean> alphabetMap;
+    // Sorted alphabet of this node, used to map a leaf bit back to its character
+    char[] alphabet;
+    
+    // Nodes whose RRR encoding takes at most this fraction of one bit per
+    // position are stored compressed. Balanced nodes barely compress, so
+    // they stay plain and skip the block decoding on every rank.
+    static final double RRR_SPACE_RATIO = 0.5;
+    // Turn off to keep every node as a plain Block (for benchmarks)
+    static boolean compressSparseNodes = true;
     
     public Node(String s, int blockSize) {
+        this(s.toCharArray(), alphabetOf(s.toCharArray()), blockSize);
+    }
+    
+    /**
+     * Written by the group.
+     * Build a node when the alphabet is already known. The wavelet tree
+     * passes each child its half of the parent's alphabet, so only the
+     * root has to scan its string for the alphabet.
+     * @param s
+     * @param alphabet Sorted distinct characters of 's'
+     * @param blockSize 
+     */
+    Node(char[] s, char[] alphabet, int blockSize) {
         this.blockSize = blockSize;
-        encode(s);
+        encode(alphabet);
         calculateBitVector(s);
-        this.block = new Block(this.bitVector, blockSize);
+        this.block = createBlock(this.bitVector, blockSize);
+        if (this.block instanceof RRRBlock) {
+            // The compressed block answers get(), so the plain bits can go
+            this.bitVector = null;
+        }
+    }
+    
+    /**
+     * Written by the group.
+     * Build a node over a text of ByteText codes. The characters of
+     * 'alphabet' have the consecutive codes firstCode, firstCode + 1, ...
+     * @param s
+     * @param alphabet Sorted distinct characters of the node
+     * @param firstCode Code of alphabet[0]
+     * @param blockSize 
+     */
+    Node(byte[] s, char[] alphabet, int firstCode, int blockSize) {
+        this.blockSize = blockSize;
+        encode(alphabet);
+        calculateBitVector(s, firstCode + alphabet.length / 2);
+        this.block = createBlock(this.bitVector, blockSize);
+        if (this.block instanceof RRRBlock) {
+            this.bitVector = null;
+        }
+    }
+    
+    /**
+     * Written by the group.
+     * Pick the bitvector representation of a node. Very sparse or very dense
+     * bitvectors compress well with RRR, everything else is stored plain.
+     * @param bitVector
+     * @param blockSize
+     * @return 
+     */
+    static RankSelectBitVector createBlock(boolean[] bitVector, int blockSize) {
+        if (compressSparseNodes
+                && RRRBlock.estimateBits(bitVector) <= RRR_SPACE_RATIO * bitVector.length) {
+            return new RRRBlock(bitVector);
+        }
+        return new Block(bitVector, blockSize);
     }
 
     public Node getLeft() {
@@ -48,34 +108,103 @@ public class Node {
         this.bitVector = bitVector;
     }
    
+    /**
+     * Bit stored at 'index', whichever representation the node uses
+     * @param index
+     * @return 
+     */
+    public boolean getBit(int index) {
+        return block.get(index);
+    }
+    
+    public int length() {
+        return block.length();
+    }
+    
     public boolean getEncoding(char c) {
         return alphabetMap.get(c);
     }
+
+    /**
+     * Character represented by 'encoding' in a leaf node.
+     * Leaves hold at most two characters, the smaller one encoded as 0.
+     * @param encoding
+     * @return 
+     */
+    public char getLeafChar(boolean encoding) {
+        return encoding ? alphabet[alphabet.length - 1] : alphabet[0];
+    }
+    
+    /**
+     * Fill the bitvector. Since the alphabet is sorted and split in half,
+     * a character is encoded as 1 exactly when it is not smaller than the
+     * first character of the second half. Large nodes are filled in
+     * parallel chunks.
+     * @param s 
+     */
+    private void calculateBitVector(char[] s){
+        bitVector = new boolean[s.length];
+        if (alphabet.length == 1) {
+            return;
+        }
+        char split = alphabet[alphabet.length / 2];
+        
+        int numberChunks = ParallelRanges.numberChunks(s.length, ParallelRanges.CHUNK_SIZE);
+        ParallelRanges.forEachChunk(numberChunks, chunk -> {
+            int end = Math.min(s.length, (chunk + 1) * ParallelRanges.CHUNK_SIZE);
+            Kernels.INSTANCE.greaterOrEqual(s, chunk * ParallelRanges.CHUNK_SIZE, end, split, bitVector);
+        });
+    }
     
-    private void calculateBitVector(String s){
-        bitVector = new boolean[s.length()];
+    /**
+     * Fill the bitvector from byte codes, a code is encoded as 1 when it
+     * is not smaller than 'splitCode'
+     */
+    private void calculateBitVector(byte[] s, int splitCode){
+        bitVector = new boolean[s.length];
+        if (alphabet.length == 1) {
+            return;
+        }
         
-        for (int i = 0; i < s.length(); i++) {
-            bitVector[i] = alphabetMap.get(s.charAt(i));
+        int numberChunks = ParallelRanges.numberChunks(s.length, ParallelRanges.CHUNK_SIZE);
+        ParallelRanges.forEachChunk(numberChunks, chunk -> {
+            int end = Math.min(s.length, (chunk + 1) * ParallelRanges.CHUNK_SIZE);
+            Kernels.INSTANCE.greaterOrEqual(s, chunk * ParallelRanges.CHUNK_SIZE, end, splitCode, bitVector);
+        });
+    }
+    
+    /**
+     * Written by the group.
+     * Sorted distinct characters of 's'
+     * @param s
+     * @return 
+     */
+    static char[] alphabetOf(char[] s){
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        int count = 0;
+        for (char c : s) {
+            if (!seen[c]) {
+                seen[c] = true;
+                count++;
+            }
+        }
+        char[] alphabet = new char[count];
+        int index = 0;
+        for (int c = 0; c < seen.length; c++) {
+            if (seen[c]) {
+                alphabet[index++] = (char) c;
+            }
         }
+        return alphabet;
     }
     
     /**
      * Create alphabet map that maps character -> integer
      * The first half of the alphabet is mapped to 0, the second half is mapped to 1
-     * @param s The string to create alphabet mapping from.
+     * @param chars The sorted alphabet of the node.
      */
-    private void encode(String s){
-        // Create alphabet string
-        String alpha = "";
-        for (int i = 0; i < s.length(); i++) {
-            if(!alpha.contains(Character.toString(s.charAt(i)))){
-                alpha += String.valueOf(s.charAt(i));
-            }
-        }
-        char[] chars = alpha.toCharArray();
-        Arrays.sort(chars);
-        
+    private void encode(char[] chars){
+        this.alphabet = chars;
         String alphabet = new String(chars);
         
         // Create map of alphabet character -> encoded bit
@@ -100,8 +229,8 @@ public class Node {
     }
     
     public void printBitVector(){
-        for (int i = 0; i < bitVector.length; i++) {
-            System.out.print(bitVector[i]);
+        for (int i = 0; i < length(); i++) {
+            System.out.print(getBit(i));
         }
         System.out.println("");
     }
@@ -110,4 +239,39 @@ public class Node {
     public int getBlockCount(int index, boolean encoding) {
         return this.block.getCount(index, encoding);
     }
-}
\ No newline at end of file
+
+    public int getBlockSelect(boolean encoding, int k) {
+        return this.block.select(encoding, k);
+    }
+
+    /**
+     * Written by the group.
+     * Add this node and its subtree to 'report', one group of lines per node
+     * @param report
+     * @param depth Indentation of the node in the report
+     * @param level Level of the node, 0 for the root
+     * @param levelBytes Bytes of every level, filled in by the subtree
+     */
+    void addTo(MemoryReport report, int depth, int level, long[] levelBytes) {
+        String kind = block instanceof RRRBlock ? "RRR" : "plain";
+        long bits = block.sizeInBytes() - block.indexBytes();
+        long shell = MemoryReport.objectBytes(6, 4);
+        long alphabetBytes = MemoryReport.arrayBytes(alphabet.length, 2);
+        long mapBytes = MemoryReport.hashMapBytes(alphabetMap);
+
+        String name = alphabet.length > 12 ? String.valueOf(alphabet, 0, 9) + "..." : String.valueOf(alphabet);
+        report.add(depth, String.format("node %s (%d bits, %s)", name, length(), kind), shell);
+        report.add(depth + 1, "bitvector", bits);
+        report.add(depth + 1, "checkpoints and samples", block.indexBytes());
+        report.add(depth + 1, "alphabet", alphabetBytes);
+        report.add(depth + 1, "alphabet map", mapBytes);
+        levelBytes[level] += shell + bits + block.indexBytes() + alphabetBytes + mapBytes;
+
+        if (left != null) {
+            left.addTo(report, depth + 1, level + 1, levelBytes);
+        }
+        if (right != null) {
+            right.addTo(report, depth + 1, level + 1, levelBytes);
+        }
+    }
+}
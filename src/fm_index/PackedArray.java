@@ -0,0 +1,118 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * Fixed width array of non-negative values, 'width' bits each, packed
+ * into longs. Positions and rows of a text of n characters need
+ * log2(n) bits, so they take 22 bits instead of 32 for 4M characters,
+ * and 40 bits instead of the 64 of a long[] past 2^32.
+ */
+public class PackedArray {
+
+    final long[] words;
+    final int width;
+    final long mask;
+    final int length;
+
+    /**
+     * @param length
+     * @param width Bits per value, 1 to 64
+     */
+    PackedArray(int length, int width) {
+        if (width < 1 || width > 64) {
+            throw new IllegalArgumentException("Width must be between 1 and 64 bits");
+        }
+        this.length = length;
+        this.width = width;
+        this.mask = width == 64 ? -1L : (1L << width) - 1;
+        // One spare word, so get can always read the word after
+        this.words = new long[(int) (((long) length * width + 63) >>> 6) + 1];
+    }
+
+    /**
+     * Bits needed to store every value from 0 to 'maxValue'
+     * @param maxValue
+     * @return
+     */
+    static int widthFor(long maxValue) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(maxValue));
+    }
+
+    /**
+     * Pack 'values', which must all be between 0 and 'maxValue'
+     * @param values
+     * @param maxValue
+     * @return
+     */
+    static PackedArray of(int[] values, long maxValue) {
+        PackedArray array = new PackedArray(values.length, widthFor(maxValue));
+        for (int i = 0; i < values.length; i++) {
+            array.set(i, values[i]);
+        }
+        return array;
+    }
+
+    long get(int index) {
+        long bit = (long) index * width;
+        int word = (int) (bit >>> 6);
+        int offset = (int) bit & 63;
+        long value = words[word] >>> offset;
+        if (offset + width > 64) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return value & mask;
+    }
+
+    /**
+     * get(index) for arrays of values below 2^31
+     */
+    int getInt(int index) {
+        return (int) get(index);
+    }
+
+    void set(int index, long value) {
+        if ((value & ~mask) != 0) {
+            throw new IllegalArgumentException("Value " + value + " does not fit in " + width + " bits");
+        }
+        long bit = (long) index * width;
+        int word = (int) (bit >>> 6);
+        int offset = (int) bit & 63;
+        words[word] = (words[word] & ~(mask << offset)) | (value << offset);
+        if (offset + width > 64) {
+            int high = 64 - offset;
+            words[word + 1] = (words[word + 1] & ~(mask >>> high)) | (value >>> high);
+        }
+    }
+
+    /**
+     * First index whose value is at least 'value', or length if there is
+     * none. The values must be increasing.
+     * @param value
+     * @return
+     */
+    int lowerBound(long value) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Heap footprint in bytes, see MemoryReport
+     */
+    public long sizeInBytes() {
+        // words; width, length; mask
+        return MemoryReport.objectBytes(1, 16) + MemoryReport.arrayBytes(words.length, 8);
+    }
+}
@@ -0,0 +1,35 @@
+package fm_index;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Written by the group.
+ * Splits construction loops over large arrays into chunks that run in
+ * parallel. Inside a fork-join task the chunks run in that task's pool,
+ * so the wavelet tree build stays within the pool it was given.
+ */
+public class ParallelRanges {
+
+    // Arrays shorter than this are processed by the calling thread
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Number of chunks of 'chunkSize' needed to cover 'length' positions
+     */
+    static int numberChunks(int length, int chunkSize) {
+        return Math.max(1, (length + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Run 'body' for every chunk index in [0, numberChunks), in parallel
+     * when there is more than one chunk.
+     */
+    static void forEachChunk(int numberChunks, IntConsumer body) {
+        if (numberChunks == 1) {
+            body.accept(0);
+        } else {
+            IntStream.range(0, numberChunks).parallel().forEach(body);
+        }
+    }
+}
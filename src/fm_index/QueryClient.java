@@ -0,0 +1,97 @@
+package fm_index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Written by the group.
+ * Client of a QueryServer on this machine. Requests on one connection are
+ * answered in order, so calls are serialized; use one client per thread
+ * for concurrent queries.
+ */
+public class QueryClient implements AutoCloseable {
+
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    public QueryClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Number of occurrences of 'query'
+     * @throws RejectedExecutionException If the server is too busy, try again later
+     */
+    public synchronized int count(String query) throws IOException {
+        out.writeByte(QueryServer.COUNT);
+        out.writeUTF(query);
+        readStatus();
+        return in.readInt();
+    }
+
+    /**
+     * Text positions of every occurrence of 'query', in row order
+     * @throws RejectedExecutionException If the server is too busy, try again later
+     */
+    public synchronized int[] locate(String query) throws IOException {
+        out.writeByte(QueryServer.LOCATE);
+        out.writeUTF(query);
+        readStatus();
+        int[] positions = new int[in.readInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readInt();
+        }
+        return positions;
+    }
+
+    /**
+     * Characters [start, start + length) of the text
+     * @throws RejectedExecutionException If the server is too busy, try again later
+     */
+    public synchronized String extract(int start, int length) throws IOException {
+        out.writeByte(QueryServer.EXTRACT);
+        out.writeInt(start);
+        out.writeInt(length);
+        readStatus();
+        char[] chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Latency percentiles and queue counters of the server
+     */
+    public synchronized String stats() throws IOException {
+        out.writeByte(QueryServer.STATS);
+        readStatus();
+        return in.readUTF();
+    }
+
+    private void readStatus() throws IOException {
+        out.flush();
+        byte status = in.readByte();
+        if (status == QueryServer.STATUS_ERROR) {
+            throw new IllegalArgumentException(in.readUTF());
+        }
+        if (status == QueryServer.STATUS_BUSY) {
+            throw new RejectedExecutionException("The query server is busy");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,250 @@
+package fm_index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Written by the group.
+ * Standalone server for one FMIndex, so that several services can share an
+ * index that is built or loaded once. It only listens on the loopback
+ * address.
+ *
+ * Usage: QueryServer indexOrTextFile blockSize [port] [workers] [queueCapacity] [batchSize]
+ *
+ * The file is either an index written by FMIndex.save or a text, read as
+ * ISO-8859-1 like ShardServer does. Once ready the server prints
+ * "LISTENING port" on its own line.
+ *
+ * Every connection is handled by its own virtual thread, so idle clients
+ * cost next to nothing. Connections do not touch the index: they hand
+ * their requests to an AsyncTextIndex, whose workers answer them in
+ * batches. When its queue stays full for ENQUEUE_TIMEOUT_MS the request is
+ * answered with STATUS_BUSY instead of queueing without bound, and the
+ * client can back off. The latency of every request, from reading it to
+ * answering it, goes into a LatencyHistogram.
+ *
+ * Protocol, per request: a command byte, then
+ *  - COUNT, LOCATE: the query (writeUTF)
+ *  - EXTRACT: the start and the length (int each)
+ *  - STATS: nothing
+ * The reply is a status byte followed by
+ *  - COUNT: the count (int)
+ *  - LOCATE: the number of positions (int) and the positions (int each)
+ *  - EXTRACT: the number of characters (int) and the characters (writeChars)
+ *  - STATS: the statistics (writeUTF)
+ *  - STATUS_ERROR: the message (writeUTF)
+ *  - STATUS_BUSY: nothing
+ */
+public class QueryServer implements AutoCloseable {
+
+    static final byte COUNT = ShardServer.COUNT;
+    static final byte LOCATE = ShardServer.LOCATE;
+    static final byte EXTRACT = 3;
+    static final byte STATS = 4;
+    static final byte STATUS_OK = ShardServer.STATUS_OK;
+    static final byte STATUS_ERROR = ShardServer.STATUS_ERROR;
+    static final byte STATUS_BUSY = 2;
+
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    static final int DEFAULT_BATCH_SIZE = 64;
+    // How long a connection waits for room in the queue before it
+    // answers STATUS_BUSY
+    static final long ENQUEUE_TIMEOUT_MS = 100;
+
+    private final FMIndex index;
+    private final AsyncTextIndex async;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private ServerSocket server;
+    private Thread acceptThread;
+    private volatile boolean closed;
+
+    public QueryServer(FMIndex index) {
+        this(index, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param index
+     * @param numberWorkers Threads that answer queued requests
+     * @param queueCapacity Requests that can wait for a worker
+     * @param batchSize Most requests a worker takes at once
+     */
+    public QueryServer(FMIndex index, int numberWorkers, int queueCapacity, int batchSize) {
+        this.index = index;
+        this.async = new AsyncTextIndex(index, numberWorkers, queueCapacity, batchSize, 0);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: QueryServer indexOrTextFile blockSize [port] [workers] [queueCapacity] [batchSize]");
+            System.exit(1);
+        }
+        int blockSize = Integer.parseInt(args[1]);
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int numberWorkers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_QUEUE_CAPACITY;
+        int batchSize = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_BATCH_SIZE;
+
+        FMIndex index;
+        if (FMIndex.isSaved(args[0])) {
+            index = FMIndex.load(args[0], blockSize);
+        } else {
+            String text = ShardServer.readText(args[0]);
+            if (text.isEmpty() || text.charAt(text.length() - 1) != FMIndex.TERMINATOR) {
+                text += FMIndex.TERMINATOR;
+            }
+            index = new FMIndex(text, blockSize);
+        }
+
+        QueryServer server = new QueryServer(index, numberWorkers, queueCapacity, batchSize);
+        System.out.println(ShardServer.READY_PREFIX + server.start(port));
+        System.out.flush();
+        // The server threads are daemons, keep the JVM alive until killed
+        server.awaitClose();
+    }
+
+    /**
+     * Start accepting connections on a virtual thread
+     * @param port The port to listen on, 0 for any free port
+     * @return The port the server listens on
+     * @throws IOException
+     */
+    public int start(int port) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        acceptThread = Thread.ofVirtual().name("query-accept").start(this::accept);
+        return server.getLocalPort();
+    }
+
+    /**
+     * Wait until the server is closed
+     */
+    public void awaitClose() throws InterruptedException {
+        acceptThread.join();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread.ofVirtual().start(() -> handle(socket));
+            } catch (IOException ex) {
+                if (!closed) {
+                    Logger.getLogger(QueryServer.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            while (true) {
+                byte command;
+                try {
+                    command = in.readByte();
+                } catch (EOFException ex) {
+                    return;
+                }
+                long received = System.nanoTime();
+                CompletableFuture<?> result;
+                if (command == COUNT) {
+                    String query = in.readUTF();
+                    result = async.submit(command + ":" + query, () -> index.count(query), ENQUEUE_TIMEOUT_MS);
+                } else if (command == LOCATE) {
+                    String query = in.readUTF();
+                    result = async.submit(command + ":" + query, () -> index.locate(query), ENQUEUE_TIMEOUT_MS);
+                } else if (command == EXTRACT) {
+                    int start = in.readInt();
+                    int length = in.readInt();
+                    result = async.submit(command + ":" + start + ":" + length,
+                            () -> index.extract(start, length), ENQUEUE_TIMEOUT_MS);
+                } else if (command == STATS) {
+                    out.writeByte(STATUS_OK);
+                    out.writeUTF(stats());
+                    out.flush();
+                    continue;
+                } else {
+                    out.writeByte(STATUS_ERROR);
+                    out.writeUTF("Unknown command " + command);
+                    out.flush();
+                    continue;
+                }
+
+                writeReply(out, command, result);
+                out.flush();
+                latency.record(System.nanoTime() - received);
+            }
+        } catch (IOException ex) {
+            if (!closed) {
+                Logger.getLogger(QueryServer.class.getName()).log(Level.WARNING, null, ex);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeReply(DataOutputStream out, byte command, CompletableFuture<?> future)
+            throws IOException, InterruptedException {
+        Object result;
+        try {
+            result = future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RejectedExecutionException) {
+                out.writeByte(STATUS_BUSY);
+            } else {
+                out.writeByte(STATUS_ERROR);
+                out.writeUTF(String.valueOf(ex.getCause().getMessage()));
+            }
+            return;
+        }
+        out.writeByte(STATUS_OK);
+        if (command == COUNT) {
+            out.writeInt((Integer) result);
+        } else if (command == LOCATE) {
+            int[] positions = (int[]) result;
+            out.writeInt(positions.length);
+            for (int position : positions) {
+                out.writeInt(position);
+            }
+        } else {
+            String text = (String) result;
+            out.writeInt(text.length());
+            out.writeChars(text);
+        }
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * Latency percentiles and queue counters on one line
+     * @return
+     */
+    public String stats() {
+        return String.format("%s batches=%d deduplicated=%d rejected=%d queued=%d",
+                latency.summary(), async.batches(), async.deduplicated(), async.rejected(), async.queued());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (server != null) {
+            server.close();
+        }
+        async.close();
+    }
+}
@@ -0,0 +1,242 @@
+package fm_index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Written by the group.
+ * Run-length compressed FM-index (r-index). The BW Text of a highly repetitive
+ * text is made of few long runs of equal characters, so instead of one bit per
+ * character per wavelet level we keep:
+ *  - one character per run (the run heads) in a wavelet tree,
+ *  - the starting row of every run in a sparse bitvector,
+ *  - for every character, the run lengths as a sparse bitvector over the
+ *    concatenation of its runs,
+ *  - the suffix array values at the run boundaries, which is enough for
+ *    toehold-based locate.
+ * All of it scales with the number of runs r instead of the text length n.
+ */
+public class RLFMIndex implements TextIndex {
+
+    int n;
+    int blockSize;
+    WaveletTree runHeads;
+    SparseBitVector runStarts;
+    HashMap<Character, SparseBitVector> runLengths;
+    // Number of characters smaller than each character (the C table)
+    HashMap<Character, Integer> occurrence;
+
+    // Suffix array value of the last row of every run
+    int[] runEndSamples;
+
+    // Samples of the function phi(SA[i]) = SA[i-1], sorted by key.
+    // For every row i that starts a run (other than row 0), phiKeys holds
+    // SA[i] and phiValues holds SA[i-1].
+    int[] phiKeys;
+    int[] phiValues;
+
+    public RLFMIndex(String sequence, int blockSize) {
+        this.n = sequence.length();
+        this.blockSize = blockSize;
+
+        SkewSuffixArray sa = new SkewSuffixArray(sequence);
+        int[] suffixArray = sa.computeFromText(sequence);
+        char[] text = sequence.toCharArray();
+
+        System.out.println("\tFinding BWT runs");
+        // First pass: count the runs overall and per character
+        HashMap<Character, Integer> runsPerChar = new HashMap<>();
+        int numberRuns = 0;
+        char previous = 0;
+        for (int i = 0; i < n; i++) {
+            char bwtChar = bwtChar(text, suffixArray, i);
+            if (i == 0 || bwtChar != previous) {
+                numberRuns++;
+                runsPerChar.merge(bwtChar, 1, Integer::sum);
+            }
+            previous = bwtChar;
+        }
+
+        // Second pass: fill the run structures
+        char[] heads = new char[numberRuns];
+        int[] starts = new int[numberRuns];
+        runEndSamples = new int[numberRuns];
+        long[] phi = new long[numberRuns - 1];
+        HashMap<Character, int[]> charRunStarts = new HashMap<>();
+        HashMap<Character, Integer> charCounts = new HashMap<>();
+        for (Character key : runsPerChar.keySet()) {
+            charRunStarts.put(key, new int[runsPerChar.get(key)]);
+            charCounts.put(key, 0);
+        }
+        HashMap<Character, Integer> charRuns = new HashMap<>();
+
+        int run = -1;
+        for (int i = 0; i < n; i++) {
+            char bwtChar = bwtChar(text, suffixArray, i);
+            if (i == 0 || bwtChar != heads[run]) {
+                if (run >= 0) {
+                    runEndSamples[run] = suffixArray[i - 1];
+                    phi[run] = ((long) suffixArray[i] << 32) | suffixArray[i - 1];
+                }
+                run++;
+                heads[run] = bwtChar;
+                starts[run] = i;
+
+                int charRun = charRuns.getOrDefault(bwtChar, 0);
+                charRunStarts.get(bwtChar)[charRun] = charCounts.get(bwtChar);
+                charRuns.put(bwtChar, charRun + 1);
+            }
+            charCounts.put(bwtChar, charCounts.get(bwtChar) + 1);
+        }
+        runEndSamples[run] = suffixArray[n - 1];
+
+        // Sort the phi samples by key (text positions are non-negative,
+        // so sorting the packed longs sorts by key).
+        Arrays.sort(phi);
+        phiKeys = new int[phi.length];
+        phiValues = new int[phi.length];
+        for (int i = 0; i < phi.length; i++) {
+            phiKeys[i] = (int) (phi[i] >>> 32);
+            phiValues[i] = (int) phi[i];
+        }
+
+        System.out.println(String.format("\tCreating run heads wavelet tree (%d runs)", numberRuns));
+        runHeads = new WaveletTree(new String(heads), blockSize);
+        runStarts = new SparseBitVector(starts, n);
+        runLengths = new HashMap<>();
+        for (Character key : charRunStarts.keySet()) {
+            runLengths.put(key, new SparseBitVector(charRunStarts.get(key), charCounts.get(key)));
+        }
+
+        // C table from the per character totals
+        occurrence = new HashMap<>();
+        char[] alphabet = runHeads.root.alphabet;
+        int total = 0;
+        for (char a : alphabet) {
+            occurrence.put(a, total);
+            total += charCounts.get(a);
+        }
+    }
+
+    private static char bwtChar(char[] text, int[] suffixArray, int row) {
+        int index = suffixArray[row] - 1;
+        if (index == -1) {
+            index = text.length - 1;
+        }
+        return text[index];
+    }
+
+    /**
+     * Number of occurrences of 'c' in the BW Text in positions [0, index)
+     * @param c
+     * @param index
+     * @return
+     */
+    public int rank(char c, int index) {
+        if (index <= 0 || !runLengths.containsKey(c)) {
+            return 0;
+        }
+        // Run that holds position index-1
+        int run = runStarts.rank(index) - 1;
+        // Number of complete runs of 'c' before that run
+        int charRuns = runHeads.rank(c, run);
+        int count = runLengths.get(c).select(charRuns + 1);
+        if (runHeads.access(run) == c) {
+            count += index - runStarts.select(run + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Perform search query
+     * @param query
+     */
+    @Override
+    public int[] search(String query) {
+        int s = 1;
+        int e = n;
+
+        // Iterate the query string backwards
+        for (int i = query.length(); i > 0; i--) {
+            char q = query.charAt(i - 1);
+            if (!occurrence.containsKey(q)) {
+                return new int[]{1, 0};
+            }
+            s = occurrence.get(q) + rank(q, s - 1) + 1;
+            e = occurrence.get(q) + rank(q, e);
+
+            if (e < s) {
+                return new int[]{1, 0};
+            }
+        }
+        return new int[]{s, e};
+    }
+
+    /**
+     * Find the text positions of every occurrence of the query.
+     * The backward search keeps a toehold, the suffix array value of the last
+     * row of the current range. Every other occurrence is then recovered from
+     * the one after it with phi.
+     * @param query
+     * @return
+     */
+    @Override
+    public int[] locate(String query) {
+        int s = 1;
+        int e = n;
+        int toehold = runEndSamples[runEndSamples.length - 1];
+
+        for (int i = query.length(); i > 0; i--) {
+            char q = query.charAt(i - 1);
+            if (!occurrence.containsKey(q)) {
+                return new int[0];
+            }
+            int newS = occurrence.get(q) + rank(q, s - 1) + 1;
+            int newE = occurrence.get(q) + rank(q, e);
+            if (newE < newS) {
+                return new int[0];
+            }
+
+            // The new last row comes from the last 'q' in rows [s, e].
+            // If that is row e itself the toehold just moves one position
+            // back in the text, otherwise the 'q' closes an earlier run
+            // and we use the sample kept for that run end.
+            int run = runStarts.rank(e) - 1;
+            if (runHeads.access(run) == q) {
+                toehold = previousPosition(toehold);
+            } else {
+                int lastRun = runHeads.select(q, runHeads.rank(q, run));
+                toehold = previousPosition(runEndSamples[lastRun]);
+            }
+            s = newS;
+            e = newE;
+        }
+
+        int[] positions = new int[e - s + 1];
+        positions[positions.length - 1] = toehold;
+        for (int i = positions.length - 2; i >= 0; i--) {
+            positions[i] = phi(positions[i + 1]);
+        }
+        return positions;
+    }
+
+    /**
+     * phi(SA[i]) = SA[i-1]. Text positions between two consecutive samples
+     * move together, so the predecessor sample gives the answer.
+     * @param position
+     * @return
+     */
+    private int phi(int position) {
+        int found = Arrays.binarySearch(phiKeys, position);
+        int predecessor = found >= 0 ? found : -found - 2;
+        return phiValues[predecessor] + (position - phiKeys[predecessor]);
+    }
+
+    private int previousPosition(int position) {
+        return position == 0 ? n - 1 : position - 1;
+    }
+
+    public int numberOfRuns() {
+        return runEndSamples.length;
+    }
+}
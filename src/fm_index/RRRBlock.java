@@ -0,0 +1,280 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * RRR compressed bitvector. The bits are cut into small blocks of
+ * BLOCK_BITS bits and every block is stored as
+ *  - its class, the number of ones in it (4 bits), and
+ *  - its offset, the index of the block among all the blocks with the
+ *    same class (ceil(log2(BLOCK_BITS choose class)) bits).
+ * Very sparse or very dense blocks have tiny offsets, so the space gets
+ * close to the zero order entropy of the bitvector. Every SUPERBLOCK
+ * blocks we keep the number of ones so far and the position of the next
+ * offset, so rank only decodes the classes of one superblock.
+ */
+public class RRRBlock implements RankSelectBitVector {
+
+    static final int BLOCK_BITS = 15;
+    static final int SUPERBLOCK = 32;
+
+    // BINOMIAL[n][k] = n choose k, for n, k <= BLOCK_BITS
+    private static final int[][] BINOMIAL = new int[BLOCK_BITS + 1][BLOCK_BITS + 1];
+    // Number of bits of the offset of a block of each class
+    private static final int[] OFFSET_BITS = new int[BLOCK_BITS + 1];
+
+    static {
+        for (int n = 0; n <= BLOCK_BITS; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+        for (int k = 0; k <= BLOCK_BITS; k++) {
+            OFFSET_BITS[k] = 32 - Integer.numberOfLeadingZeros(BINOMIAL[BLOCK_BITS][k] - 1);
+        }
+    }
+
+    private int length;
+    private int numberBlocks;
+    private int ones;
+    // Two 4 bit classes per byte
+    private byte[] classes;
+    private long[] offsets;
+    // Number of ones before each superblock, and the bit position
+    // in 'offsets' of the first block of each superblock
+    private int[] superRanks;
+    private int[] superPointers;
+
+    public RRRBlock(boolean[] bitvector) {
+        this.length = bitvector.length;
+        this.numberBlocks = (length + BLOCK_BITS - 1) / BLOCK_BITS;
+        this.classes = new byte[(numberBlocks + 1) / 2];
+        int numberSuperblocks = (numberBlocks + SUPERBLOCK - 1) / SUPERBLOCK;
+        this.superRanks = new int[numberSuperblocks];
+        this.superPointers = new int[numberSuperblocks];
+
+        long offsetBits = 0;
+        for (int b = 0; b < numberBlocks; b++) {
+            offsetBits += OFFSET_BITS[Integer.bitCount(blockValue(bitvector, b))];
+        }
+        this.offsets = new long[(int) ((offsetBits + 63) / 64)];
+
+        int pointer = 0;
+        for (int b = 0; b < numberBlocks; b++) {
+            if (b % SUPERBLOCK == 0) {
+                superRanks[b / SUPERBLOCK] = ones;
+                superPointers[b / SUPERBLOCK] = pointer;
+            }
+            int value = blockValue(bitvector, b);
+            int blockClass = Integer.bitCount(value);
+            setClass(b, blockClass);
+            writeBits(pointer, encode(value, blockClass), OFFSET_BITS[blockClass]);
+            pointer += OFFSET_BITS[blockClass];
+            ones += blockClass;
+        }
+    }
+
+    /**
+     * Estimated size in bits of the RRR encoding of 'bitvector',
+     * without building it.
+     * @param bitvector
+     * @return
+     */
+    public static long estimateBits(boolean[] bitvector) {
+        int numberBlocks = (bitvector.length + BLOCK_BITS - 1) / BLOCK_BITS;
+        long bits = 4L * numberBlocks;
+        for (int b = 0; b < numberBlocks; b++) {
+            bits += OFFSET_BITS[Integer.bitCount(blockValue(bitvector, b))];
+        }
+        bits += 64L * ((numberBlocks + SUPERBLOCK - 1) / SUPERBLOCK);
+        return bits;
+    }
+
+    private static int blockValue(boolean[] bitvector, int block) {
+        int value = 0;
+        int start = block * BLOCK_BITS;
+        int end = Math.min(start + BLOCK_BITS, bitvector.length);
+        for (int i = start; i < end; i++) {
+            if (bitvector[i]) {
+                value |= 1 << (i - start);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Index of 'value' among the BLOCK_BITS bit values with 'blockClass'
+     * ones, in increasing order (combinatorial number system).
+     */
+    private static int encode(int value, int blockClass) {
+        int offset = 0;
+        for (int bit = BLOCK_BITS - 1; bit >= 0 && blockClass > 0; bit--) {
+            if ((value & (1 << bit)) != 0) {
+                // All the values with this bit cleared come first
+                offset += blockClass <= bit ? BINOMIAL[bit][blockClass] : 0;
+                blockClass--;
+            }
+        }
+        return offset;
+    }
+
+    private static int decode(int offset, int blockClass) {
+        int value = 0;
+        for (int bit = BLOCK_BITS - 1; bit >= 0 && blockClass > 0; bit--) {
+            int withoutBit = blockClass <= bit ? BINOMIAL[bit][blockClass] : 0;
+            if (offset >= withoutBit) {
+                value |= 1 << bit;
+                offset -= withoutBit;
+                blockClass--;
+            }
+        }
+        return value;
+    }
+
+    private int getClass(int block) {
+        return (classes[block >> 1] >> ((block & 1) * 4)) & 0xF;
+    }
+
+    private void setClass(int block, int blockClass) {
+        classes[block >> 1] |= (byte) (blockClass << ((block & 1) * 4));
+    }
+
+    private void writeBits(int position, int value, int bits) {
+        if (bits == 0) {
+            return;
+        }
+        int word = position >>> 6;
+        int shift = position & 63;
+        offsets[word] |= (long) value << shift;
+        if (shift + bits > 64) {
+            offsets[word + 1] |= (long) value >>> (64 - shift);
+        }
+    }
+
+    private int readBits(int position, int bits) {
+        if (bits == 0) {
+            return 0;
+        }
+        int word = position >>> 6;
+        int shift = position & 63;
+        long value = offsets[word] >>> shift;
+        if (shift + bits > 64) {
+            value |= offsets[word + 1] << (64 - shift);
+        }
+        return (int) (value & ((1L << bits) - 1));
+    }
+
+    /**
+     * Decoded bits of 'block'. Walks the classes from the start of its
+     * superblock to find where its offset is stored.
+     */
+    private int decodeBlock(int block) {
+        int superblock = block / SUPERBLOCK;
+        int pointer = superPointers[superblock];
+        for (int b = superblock * SUPERBLOCK; b < block; b++) {
+            pointer += OFFSET_BITS[getClass(b)];
+        }
+        int blockClass = getClass(block);
+        return decode(readBits(pointer, OFFSET_BITS[blockClass]), blockClass);
+    }
+
+    @Override
+    public boolean get(int index) {
+        return (decodeBlock(index / BLOCK_BITS) & (1 << (index % BLOCK_BITS))) != 0;
+    }
+
+    @Override
+    public int getCount(int index, boolean encoding) {
+        if (index <= 0) {
+            return 0;
+        }
+        if (index >= length) {
+            // Also avoids reading past the last superblock when the
+            // length is a multiple of the superblock size
+            return encoding ? ones : length - ones;
+        }
+        int block = index / BLOCK_BITS;
+        int superblock = block / SUPERBLOCK;
+        int count = superRanks[superblock];
+        int pointer = superPointers[superblock];
+        for (int b = superblock * SUPERBLOCK; b < block; b++) {
+            int blockClass = getClass(b);
+            count += blockClass;
+            pointer += OFFSET_BITS[blockClass];
+        }
+        int remainder = index % BLOCK_BITS;
+        if (remainder != 0) {
+            int blockClass = getClass(block);
+            int value = decode(readBits(pointer, OFFSET_BITS[blockClass]), blockClass);
+            count += Integer.bitCount(value & ((1 << remainder) - 1));
+        }
+        return encoding ? count : index - count;
+    }
+
+    @Override
+    public int select(boolean encoding, int k) {
+        int total = encoding ? ones : length - ones;
+        if (k <= 0 || k > total) {
+            return -1;
+        }
+
+        // Last superblock with fewer than k occurrences before it
+        int low = 0;
+        int high = superRanks.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (countBeforeSuperblock(mid, encoding) < k) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        int count = countBeforeSuperblock(low, encoding);
+        int pointer = superPointers[low];
+        for (int b = low * SUPERBLOCK; b < numberBlocks; b++) {
+            int blockClass = getClass(b);
+            int blockLength = Math.min(BLOCK_BITS, length - b * BLOCK_BITS);
+            int inBlock = encoding ? blockClass : blockLength - blockClass;
+            if (count + inBlock >= k) {
+                int value = decode(readBits(pointer, OFFSET_BITS[blockClass]), blockClass);
+                for (int i = 0; i < blockLength; i++) {
+                    if (((value & (1 << i)) != 0) == encoding) {
+                        count++;
+                        if (count == k) {
+                            return b * BLOCK_BITS + i;
+                        }
+                    }
+                }
+            }
+            count += inBlock;
+            pointer += OFFSET_BITS[blockClass];
+        }
+        return -1;
+    }
+
+    private int countBeforeSuperblock(int superblock, boolean encoding) {
+        int before = superRanks[superblock];
+        return encoding ? before : superblock * SUPERBLOCK * BLOCK_BITS - before;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return MemoryReport.arrayBytes(classes.length, 1)
+                + MemoryReport.arrayBytes(offsets.length, 8)
+                + indexBytes();
+    }
+
+    @Override
+    public long indexBytes() {
+        // classes, offsets, superRanks, superPointers; length, numberBlocks, ones
+        return MemoryReport.objectBytes(4, 12)
+                + MemoryReport.arrayBytes(superRanks.length, 4)
+                + MemoryReport.arrayBytes(superPointers.length, 4);
+    }
+}
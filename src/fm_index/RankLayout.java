@@ -0,0 +1,248 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Written by the group.
+ * Block size of every node of a wavelet tree. A uniform layout gives every
+ * node the same block size, like before. A planned layout chooses the
+ * checkpoint density of every node from its length and a memory budget for
+ * all the checkpoints.
+ *
+ * With checkpoints every b bits a rank scans about b/4 bits on average,
+ * because Block scans from the nearest checkpoint. A node is visited by a
+ * rank in proportion to its length, so halving the block size of a long
+ * node saves more scanning than halving it on a short one. The planner
+ * starts with no checkpoints anywhere and repeatedly halves the block size
+ * of the node that saves the most expected scanning per byte, until the
+ * budget is spent.
+ */
+public class RankLayout {
+
+    // Smallest block size the planner chooses
+    static final int MIN_BLOCK_SIZE = 32;
+    // Block size used outside the wavelet tree when the plan gives none
+    static final int DEFAULT_BLOCK_SIZE = 1024;
+    // Block size of a node without checkpoints
+    static final int NO_CHECKPOINTS = -1;
+
+    private int uniformBlockSize;
+    // Planned layouts only: node lengths and block sizes, keyed by the
+    // alphabet of the node, in the order of a pre-order traversal
+    private HashMap<String, Integer> blockSizes;
+    private HashMap<String, Integer> nodeLengths;
+    private String[] nodes;
+    private int n;
+    private long budgetBytes;
+
+    private RankLayout(int uniformBlockSize) {
+        this.uniformBlockSize = uniformBlockSize;
+    }
+
+    /**
+     * Every node gets 'blockSize'
+     * @param blockSize
+     * @return
+     */
+    public static RankLayout uniform(int blockSize) {
+        return new RankLayout(blockSize);
+    }
+
+    /**
+     * Plan the block sizes of the wavelet tree of 'text', or of any
+     * permutation of it such as its BW Text, so that the checkpoints of all
+     * the nodes take at most 'budgetBytes'.
+     * @param text
+     * @param budgetBytes
+     * @return
+     */
+    public static RankLayout plan(String text, long budgetBytes) {
+        RankLayout layout = new RankLayout(0);
+        layout.blockSizes = new HashMap<>();
+        layout.nodeLengths = new HashMap<>();
+        layout.n = text.length();
+        layout.budgetBytes = budgetBytes;
+
+        // The length of a node is the number of characters of its alphabet
+        int[] counts = new int[65536];
+        for (int i = 0; i < text.length(); i++) {
+            counts[text.charAt(i)]++;
+        }
+        char[] alphabet = Node.alphabetOf(text.toCharArray());
+        List<String> order = new ArrayList<>();
+        layout.addNodes(alphabet, counts, order);
+        layout.nodes = order.toArray(new String[0]);
+
+        PriorityQueue<Step> steps = new PriorityQueue<>();
+        for (String node : layout.nodes) {
+            layout.blockSizes.put(node, NO_CHECKPOINTS);
+            Step step = layout.nextStep(node);
+            if (step != null) {
+                steps.add(step);
+            }
+        }
+
+        long remaining = budgetBytes;
+        while (!steps.isEmpty()) {
+            Step step = steps.poll();
+            // A step that does not fit is dropped, a cheaper one of
+            // another node may still fit
+            if (step.extraBytes <= remaining) {
+                remaining -= step.extraBytes;
+                layout.blockSizes.put(step.node, step.blockSize);
+                Step next = layout.nextStep(step.node);
+                if (next != null) {
+                    steps.add(next);
+                }
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Record the lengths of the node over 'alphabet' and of its
+     * descendants, splitting the alphabet like WaveletTree does
+     */
+    private void addNodes(char[] alphabet, int[] counts, List<String> order) {
+        int length = 0;
+        for (char c : alphabet) {
+            length += counts[c];
+        }
+        String key = String.valueOf(alphabet);
+        nodeLengths.put(key, length);
+        order.add(key);
+        if (alphabet.length > 2) {
+            int half = alphabet.length / 2;
+            addNodes(Arrays.copyOfRange(alphabet, 0, half), counts, order);
+            addNodes(Arrays.copyOfRange(alphabet, half, alphabet.length), counts, order);
+        }
+    }
+
+    /**
+     * Halving of the block size of 'node' from its current one, or null
+     * if it is already at MIN_BLOCK_SIZE
+     */
+    private Step nextStep(String node) {
+        int length = nodeLengths.get(node);
+        int current = blockSizes.get(node);
+        int next;
+        if (current == NO_CHECKPOINTS) {
+            // Largest power of two that still gives a checkpoint
+            // before the end of the node
+            next = Integer.highestOneBit(Math.max(1, length - 1));
+        } else {
+            next = current / 2;
+        }
+        if (next < MIN_BLOCK_SIZE || next >= length) {
+            return null;
+        }
+        double saved = (double) length / n * (expectedScan(length, current) - expectedScan(length, next));
+        long extraBytes = checkpointBytes(length, next) - checkpointBytes(length, current);
+        return new Step(node, next, saved, extraBytes);
+    }
+
+    /**
+     * Average number of bits a rank scans in a node of 'length' bits
+     */
+    static double expectedScan(int length, int blockSize) {
+        if (blockSize == NO_CHECKPOINTS || blockSize > length) {
+            return length / 4.0;
+        }
+        return blockSize / 4.0;
+    }
+
+    static long checkpointBytes(int length, int blockSize) {
+        if (blockSize == NO_CHECKPOINTS || blockSize > length) {
+            return 0;
+        }
+        return 4L * (length / blockSize);
+    }
+
+    private static class Step implements Comparable<Step> {
+        final String node;
+        final int blockSize;
+        final double saved;
+        final long extraBytes;
+
+        Step(String node, int blockSize, double saved, long extraBytes) {
+            this.node = node;
+            this.blockSize = blockSize;
+            this.saved = saved;
+            this.extraBytes = extraBytes;
+        }
+
+        double ratio() {
+            return saved / Math.max(1, extraBytes);
+        }
+
+        @Override
+        public int compareTo(Step other) {
+            // Best saving per byte first
+            return Double.compare(other.ratio(), ratio());
+        }
+    }
+
+    /**
+     * Block size of the node over 'alphabet'
+     * @param alphabet Sorted alphabet of the node
+     * @return
+     */
+    public int blockSizeFor(char[] alphabet) {
+        if (blockSizes == null) {
+            return uniformBlockSize;
+        }
+        Integer blockSize = blockSizes.get(String.valueOf(alphabet));
+        // A text that was not planned for gets the default
+        return blockSize == null ? DEFAULT_BLOCK_SIZE : blockSize;
+    }
+
+    /**
+     * Block size for the bitvectors outside the wavelet tree, such as the
+     * sampled rows of the FMIndex: the one of the root, if it has checkpoints
+     * @return
+     */
+    public int baseBlockSize() {
+        if (blockSizes == null) {
+            return uniformBlockSize;
+        }
+        int root = blockSizes.get(nodes[0]);
+        return root == NO_CHECKPOINTS ? DEFAULT_BLOCK_SIZE : root;
+    }
+
+    /**
+     * Chosen block size of every node, the memory of its checkpoints and
+     * the expected number of bits a rank scans in it. Nodes that are stored
+     * as RRRBlocks ignore their block size.
+     * @return
+     */
+    public String report() {
+        if (blockSizes == null) {
+            return String.format("Uniform block size %d%n", uniformBlockSize);
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Planned layout for %d characters, budget %d bytes%n", n, budgetBytes));
+        report.append(String.format("\t%-12s %10s %10s %12s %12s %12s%n",
+                "alphabet", "length", "blockSize", "checkpoints", "bytes", "scan"));
+        long totalBytes = 0;
+        double weightedScan = 0;
+        for (String node : nodes) {
+            int length = nodeLengths.get(node);
+            int blockSize = blockSizes.get(node);
+            long bytes = checkpointBytes(length, blockSize);
+            double scan = expectedScan(length, blockSize);
+            totalBytes += bytes;
+            weightedScan += (double) length / n * scan;
+            String name = node.length() > 12 ? node.substring(0, 9) + "..." : node;
+            report.append(String.format("\t%-12s %10d %10s %12d %12d %12.1f%n",
+                    name, length, blockSize == NO_CHECKPOINTS ? "none" : String.valueOf(blockSize),
+                    bytes / 4, bytes, scan));
+        }
+        report.append(String.format("\tTotal checkpoint bytes: %d%n", totalBytes));
+        report.append(String.format("\tExpected bits scanned per rank: %.1f%n", weightedScan));
+        return report.toString();
+    }
+}
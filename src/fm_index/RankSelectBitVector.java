@@ -0,0 +1,41 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * Rank and select interface of the bitvectors kept in the wavelet tree
+ * nodes, so a node can use either the checkpointed Block or the
+ * compressed RRRBlock.
+ */
+public interface RankSelectBitVector {
+
+    /**
+     * Value of the bit at 'index'
+     */
+    boolean get(int index);
+
+    /**
+     * Number of occurrences of 'encoding' in positions [0, index)
+     */
+    int getCount(int index, boolean encoding);
+
+    /**
+     * Position of the k-th (1-based) occurrence of 'encoding', or -1
+     */
+    int select(boolean encoding, int k);
+
+    /**
+     * Number of bits in the bitvector
+     */
+    int length();
+
+    /**
+     * Heap footprint of the structure in bytes, see MemoryReport
+     */
+    long sizeInBytes();
+
+    /**
+     * Part of sizeInBytes() spent on the rank and select directory
+     * (checkpoints, samples, superblocks) rather than on the bits
+     */
+    long indexBytes();
+}
@@ -0,0 +1,69 @@
+package fm_index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Written by the group.
+ * Client side of a ShardServer running in another local JVM.
+ * Requests on one connection are answered in order, so calls are
+ * serialized; the coordinator still queries different shards in parallel.
+ */
+public class RemoteShard implements Shard {
+
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    // The server process, if this coordinator started it
+    private Process process;
+
+    public RemoteShard(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    RemoteShard(int port, Process process) throws IOException {
+        this(port);
+        this.process = process;
+    }
+
+    @Override
+    public synchronized int count(String query) throws IOException {
+        send(ShardServer.COUNT, query);
+        return in.readInt();
+    }
+
+    @Override
+    public synchronized long[] locate(String query) throws IOException {
+        send(ShardServer.LOCATE, query);
+        long[] positions = new long[in.readInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readLong();
+        }
+        return positions;
+    }
+
+    private void send(byte command, String query) throws IOException {
+        out.writeByte(command);
+        out.writeUTF(query);
+        out.flush();
+        if (in.readByte() == ShardServer.STATUS_ERROR) {
+            throw new IllegalArgumentException(in.readUTF());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        socket.close();
+        if (process != null) {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package fm_index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Written by the group.
+ * Growing collection of documents indexed as a list of segments, in the
+ * spirit of a log-structured merge tree. Appending a document only builds a
+ * small FMIndex over that document, so its cost depends on the document and
+ * not on the collection. A background thread merges the newest segments
+ * whenever the older one is not much larger than the newer one, which keeps
+ * the number of segments logarithmic in the collection size.
+ *
+ * Segments are merged by merging their BW Texts: every suffix of the newer
+ * segment is backward searched in the older one to find where it goes, so
+ * no suffix array is rebuilt.
+ *
+ * Every document is followed by the terminator, and positions returned by
+ * locate are offsets in the concatenation "document1$document2$...".
+ */
+public class SegmentedIndex implements AutoCloseable {
+
+    // Merge the two newest segments when the older one is at most
+    // this many times the size of the newer one
+    static final int MERGE_RATIO = 2;
+
+    private static class Segment {
+        final FMIndex index;
+        final int length;
+
+        Segment(FMIndex index) {
+            this.index = index;
+            this.length = index.n;
+        }
+    }
+
+    int blockSize;
+    // Oldest segment first. Replaced as a whole on every change so that
+    // queries can work on a snapshot without locking.
+    private volatile List<Segment> segments = Collections.emptyList();
+    private ExecutorService merger;
+
+    public SegmentedIndex(int blockSize) {
+        this.blockSize = blockSize;
+        this.merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Add a document to the collection
+     * @param document Must not contain the terminator
+     */
+    public void append(String document) {
+        if (document.indexOf(FMIndex.TERMINATOR) >= 0) {
+            throw new IllegalArgumentException("Documents must not contain the terminator character");
+        }
+        Segment segment = new Segment(new FMIndex(document + FMIndex.TERMINATOR, blockSize));
+        synchronized (this) {
+            List<Segment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            segments = Collections.unmodifiableList(updated);
+        }
+        merger.submit(this::mergeSegments);
+    }
+
+    /**
+     * Number of occurrences of 'query' in all the documents
+     * @param query
+     * @return
+     */
+    public int count(String query) {
+        int count = 0;
+        for (Segment segment : segments) {
+            int[] range = segment.index.search(query);
+            count += Math.max(0, range[1] - range[0] + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Positions of every occurrence of 'query', in increasing order
+     * @param query
+     * @return
+     */
+    public int[] locate(String query) {
+        List<int[]> results = new ArrayList<>();
+        int total = 0;
+        int base = 0;
+        for (Segment segment : segments) {
+            int[] positions = segment.index.locate(query);
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] += base;
+            }
+            results.add(positions);
+            total += positions.length;
+            base += segment.length;
+        }
+
+        int[] positions = new int[total];
+        int index = 0;
+        for (int[] result : results) {
+            System.arraycopy(result, 0, positions, index, result.length);
+            index += result.length;
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    public int numberOfSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Merge the two newest segments for as long as they are of similar size.
+     * Runs on the merger thread only, so the pair it merges cannot be merged
+     * by anyone else; appends only add segments after it.
+     */
+    private void mergeSegments() {
+        while (true) {
+            List<Segment> snapshot = segments;
+            int last = snapshot.size() - 1;
+            if (last < 1 || snapshot.get(last - 1).length > MERGE_RATIO * snapshot.get(last).length) {
+                return;
+            }
+            Segment older = snapshot.get(last - 1);
+            Segment newer = snapshot.get(last);
+            Segment merged = new Segment(merge(older.index, newer.index, blockSize));
+
+            synchronized (this) {
+                List<Segment> updated = new ArrayList<>(segments);
+                int position = updated.indexOf(older);
+                updated.set(position, merged);
+                updated.remove(position + 1);
+                segments = Collections.unmodifiableList(updated);
+            }
+        }
+    }
+
+    /**
+     * Written by the group.
+     * Merge the indexes of two texts A and B, both ending with the terminator,
+     * into the index of AB.
+     *
+     * Suffixes are compared up to the end of their document, and on a tie
+     * the suffix of A goes first. For every row of B we compute how many rows
+     * of A come before it. For a suffix that starts with the terminator that
+     * is the number of characters of A up to and including the terminator.
+     * Otherwise, for a suffix cY it is C_A[c] + rank_A(c, rows of A before Y),
+     * one backward search step in A. Walking B backwards with LF from each of
+     * its terminator rows visits every row of B once.
+     * @param a Index of the earlier text
+     * @param b Index of the later text
+     * @param blockSize
+     * @return
+     */
+    static FMIndex merge(FMIndex a, FMIndex b, int blockSize) {
+        char next = (char) (FMIndex.TERMINATOR + 1);
+        int beforeTerminatorInA = countSmaller(a, next);
+        int firstTerminatorRowInB = countSmaller(b, FMIndex.TERMINATOR);
+        int lastTerminatorRowInB = countSmaller(b, next);
+
+        // insertion[j] = number of rows of A that come before row j of B
+        int[] insertion = new int[b.n];
+        for (int start = firstTerminatorRowInB; start < lastTerminatorRowInB; start++) {
+            int row = start;
+            int before = beforeTerminatorInA;
+            insertion[row] = before;
+            char previous = b.wt.access(row);
+            while (previous != FMIndex.TERMINATOR) {
+                before = countSmaller(a, previous) + rankIn(a, previous, before);
+                row = b.LF(row);
+                insertion[row] = before;
+                previous = b.wt.access(row);
+            }
+        }
+
+        // Interleave the rows. The insertion points grow with the rows of B.
+        StringBuilder bwt = new StringBuilder(a.n + b.n);
+        boolean[] sampled = new boolean[a.n + b.n];
+        int[] samples = new int[a.saSamples.length() + b.saSamples.length()];
+        int aSample = 0;
+        int bSample = 0;
+        int sample = 0;
+        int bRow = 0;
+        for (int row = 0, aRow = 0; row < a.n + b.n; row++) {
+            boolean fromB = bRow < b.n && (aRow == a.n || insertion[bRow] <= aRow);
+            if (fromB) {
+                bwt.append(b.wt.access(bRow));
+                if (b.sampledRows.get(bRow)) {
+                    sampled[row] = true;
+                    // Positions in B move by the length of A
+                    samples[sample++] = b.saSamples.getInt(bSample++) + a.n;
+                }
+                bRow++;
+            } else {
+                bwt.append(a.wt.access(aRow));
+                if (a.sampledRows.get(aRow)) {
+                    sampled[row] = true;
+                    samples[sample++] = a.saSamples.getInt(aSample++);
+                }
+                aRow++;
+            }
+        }
+
+        return new FMIndex(bwt.toString(), sampled, samples, blockSize);
+    }
+
+    /**
+     * Number of characters in the text of 'index' that are smaller than 'c',
+     * also for characters that do not occur in it
+     */
+    private static int countSmaller(FMIndex index, char c) {
+        if (index.c.occurrence.containsKey(c)) {
+            return index.c.occurrence.get(c);
+        }
+        // C of the next larger character, or everything if there is none
+        for (char a : index.wt.root.alphabet) {
+            if (a > c) {
+                return index.c.occurrence.get(a);
+            }
+        }
+        return index.n;
+    }
+
+    private static int rankIn(FMIndex index, char c, int i) {
+        if (!index.c.occurrence.containsKey(c)) {
+            return 0;
+        }
+        return index.wt.rank(c, i);
+    }
+
+    /**
+     * Wait for the merges that are already scheduled to finish
+     */
+    public void awaitMerges() throws InterruptedException {
+        try {
+            merger.submit(() -> { }).get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Stop the merge thread once the scheduled merges are done. If the
+     * caller is interrupted while waiting, the merges are abandoned and
+     * the interrupt flag is set again.
+     */
+    @Override
+    public void close() {
+        merger.shutdown();
+        try {
+            merger.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            merger.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
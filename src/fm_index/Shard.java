@@ -0,0 +1,26 @@
+package fm_index;
+
+import java.io.IOException;
+
+/**
+ * Written by the group.
+ * One shard of a ShardedIndex. Results are already translated to
+ * positions in the full text and only cover the occurrences that
+ * start in the part of the text the shard owns. A shard is one FMIndex,
+ * so it holds less than 2^31 characters, but the full text may be longer
+ * and its positions are longs.
+ */
+public interface Shard {
+
+    /**
+     * Number of occurrences of 'query' that start in this shard
+     */
+    int count(String query) throws IOException;
+
+    /**
+     * Text positions of the occurrences of 'query' that start in this shard
+     */
+    long[] locate(String query) throws IOException;
+
+    void close() throws IOException;
+}
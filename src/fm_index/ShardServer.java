@@ -0,0 +1,146 @@
+package fm_index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Written by the group.
+ * Serves one IndexShard to a ShardedIndex coordinator running in another
+ * JVM on the same machine. The server only listens on the loopback address.
+ *
+ * Usage: ShardServer textFile start end maxPatternLength blockSize [port]
+ *
+ * Once the shard is built the server prints "LISTENING port" on its own line.
+ *
+ * Protocol, per request: a command byte and the query (writeUTF).
+ * The reply is a status byte (STATUS_OK or STATUS_ERROR) followed by
+ *  - COUNT: the count (int)
+ *  - LOCATE: the number of positions (int) and the positions (long each)
+ *  - on error: the message (writeUTF)
+ */
+public class ShardServer {
+
+    static final byte COUNT = 1;
+    static final byte LOCATE = 2;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final String READY_PREFIX = "LISTENING ";
+
+    private final Shard shard;
+
+    public ShardServer(Shard shard) {
+        this.shard = shard;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: ShardServer textFile start end maxPatternLength blockSize [port]");
+            System.exit(1);
+        }
+        long start = Long.parseLong(args[1]);
+        long end = Long.parseLong(args[2]);
+        int maxPatternLength = Integer.parseInt(args[3]);
+        int blockSize = Integer.parseInt(args[4]);
+        int port = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+
+        // Only the shard and its overlap are read, so the file can be
+        // longer than a String
+        String text = readText(args[0], start, end + maxPatternLength - 1);
+        IndexShard shard = new IndexShard(text, start, (int) (end - start), maxPatternLength, blockSize);
+        text = null;
+        new ShardServer(shard).serve(port);
+    }
+
+    /**
+     * Texts are read as ISO-8859-1 so that every byte is one character
+     * and the coordinator can compute shard bounds from the file size.
+     */
+    static String readText(String filename) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Characters [start, end) of a text file, or up to its end
+     */
+    static String readText(String filename, long start, long end) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            end = Math.min(end, file.length());
+            if (end - start >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("A shard must have less than 2^31 characters");
+            }
+            byte[] bytes = new byte[(int) (end - start)];
+            file.seek(start);
+            file.readFully(bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Accept connections until the process is killed. Every connection
+     * gets its own thread, and the shard is safe to query concurrently.
+     * @param port The port to listen on, 0 for any free port
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println(READY_PREFIX + server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> handle(socket));
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                byte command;
+                try {
+                    command = in.readByte();
+                } catch (EOFException ex) {
+                    return;
+                }
+                String query = in.readUTF();
+                try {
+                    if (command == COUNT) {
+                        int count = shard.count(query);
+                        out.writeByte(STATUS_OK);
+                        out.writeInt(count);
+                    } else if (command == LOCATE) {
+                        long[] positions = shard.locate(query);
+                        out.writeByte(STATUS_OK);
+                        out.writeInt(positions.length);
+                        for (long position : positions) {
+                            out.writeLong(position);
+                        }
+                    } else {
+                        throw new IllegalArgumentException("Unknown command " + command);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    out.writeByte(STATUS_ERROR);
+                    out.writeUTF(ex.getMessage());
+                }
+                out.flush();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ShardServer.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package fm_index;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Written by the group.
+ * Index over a text split into shards. Every shard owns a contiguous range
+ * of the text and also indexes the next maxPatternLength - 1 characters,
+ * so patterns of up to maxPatternLength characters that cross a shard
+ * boundary are still found, and only by the shard where they start.
+ *
+ * The shards are built in parallel, either as IndexShards in this JVM
+ * (build) or as ShardServer processes on the same machine (launch).
+ * Every query is sent to all the shards at once and the answers are merged.
+ *
+ * Positions in the full text are longs. Every shard is an FMIndex over
+ * less than 2^31 characters, so a text of more than 2^31 characters is
+ * indexed by launching enough shards; ShardServer reads only its own
+ * range of the file.
+ */
+public class ShardedIndex implements AutoCloseable {
+
+    List<Shard> shards;
+    int maxPatternLength;
+    ExecutorService queryPool;
+
+    private ShardedIndex(List<Shard> shards, int maxPatternLength) {
+        this.shards = shards;
+        this.maxPatternLength = maxPatternLength;
+        this.queryPool = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Build the shards in this JVM, one thread per shard up to the number of cores.
+     * @param text
+     * @param numberShards
+     * @param maxPatternLength Longest pattern that can be searched
+     * @param blockSize
+     * @return
+     * @throws InterruptedException
+     */
+    public static ShardedIndex build(String text, int numberShards, int maxPatternLength, int blockSize)
+            throws InterruptedException {
+        long[] bounds = shardBounds(text.length(), numberShards);
+        int threads = Math.min(numberShards, Runtime.getRuntime().availableProcessors());
+        ExecutorService buildPool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Shard>> tasks = new ArrayList<>();
+            for (int i = 0; i < numberShards; i++) {
+                int start = (int) bounds[i];
+                int end = (int) bounds[i + 1];
+                tasks.add(() -> new IndexShard(text, start, end, maxPatternLength, blockSize));
+            }
+            List<Shard> shards = new ArrayList<>();
+            for (Future<Shard> future : buildPool.invokeAll(tasks)) {
+                shards.add(getResult(future));
+            }
+            return new ShardedIndex(shards, maxPatternLength);
+        } finally {
+            buildPool.shutdown();
+        }
+    }
+
+    /**
+     * Start one ShardServer process per shard on this machine and connect to them
+     * over loopback. The processes build their shards at the same time.
+     * The text file is read as ISO-8859-1, one character per byte.
+     * @param textFile
+     * @param numberShards
+     * @param maxPatternLength Longest pattern that can be searched
+     * @param blockSize
+     * @return
+     * @throws IOException
+     */
+    public static ShardedIndex launch(String textFile, int numberShards, int maxPatternLength, int blockSize)
+            throws IOException {
+        long[] bounds = shardBounds(new File(textFile).length(), numberShards);
+        for (int i = 0; i < numberShards; i++) {
+            if (bounds[i + 1] - bounds[i] + maxPatternLength > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Shards must have less than 2^31 characters, use more shards");
+            }
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        List<Process> processes = new ArrayList<>();
+        List<Shard> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < numberShards; i++) {
+                ProcessBuilder builder = new ProcessBuilder(java,
+                        "-cp", System.getProperty("java.class.path"),
+                        ShardServer.class.getName(), textFile,
+                        String.valueOf(bounds[i]), String.valueOf(bounds[i + 1]),
+                        String.valueOf(maxPatternLength), String.valueOf(blockSize));
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                processes.add(builder.start());
+            }
+            for (Process process : processes) {
+                shards.add(new RemoteShard(waitForPort(process), process));
+            }
+        } catch (IOException ex) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            throw ex;
+        }
+        return new ShardedIndex(shards, maxPatternLength);
+    }
+
+    /**
+     * Read the server output until it reports the port it listens on
+     */
+    private static int waitForPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(ShardServer.READY_PREFIX)) {
+                return Integer.parseInt(line.substring(ShardServer.READY_PREFIX.length()).trim());
+            }
+        }
+        throw new IOException("Shard server exited before it was ready");
+    }
+
+    /**
+     * Split [0, n) into numberShards ranges of nearly equal length.
+     * Shard i owns [bounds[i], bounds[i+1]).
+     * @param n
+     * @param numberShards
+     * @return
+     */
+    static long[] shardBounds(long n, int numberShards) {
+        long[] bounds = new long[numberShards + 1];
+        for (int i = 0; i <= numberShards; i++) {
+            // n * i would overflow past 2^63 / numberShards
+            bounds[i] = n / numberShards * i + n % numberShards * i / numberShards;
+        }
+        return bounds;
+    }
+
+    /**
+     * Number of occurrences of 'query' in the whole text
+     * @param query At most maxPatternLength characters
+     * @return
+     * @throws IOException If a remote shard fails
+     */
+    public long count(String query) throws IOException {
+        long count = 0;
+        for (Integer shardCount : fanOut(shard -> shard.count(query))) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Text positions of every occurrence of 'query', in increasing order
+     * @param query At most maxPatternLength characters
+     * @return
+     * @throws IOException If a remote shard fails
+     */
+    public long[] locate(String query) throws IOException {
+        List<long[]> results = fanOut(shard -> shard.locate(query));
+        int total = 0;
+        for (long[] result : results) {
+            total += result.length;
+        }
+        long[] positions = new long[total];
+        int index = 0;
+        for (long[] result : results) {
+            System.arraycopy(result, 0, positions, index, result.length);
+            index += result.length;
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    private interface ShardCall<T> {
+        T apply(Shard shard) throws IOException;
+    }
+
+    /**
+     * Run 'call' on every shard concurrently and wait for all the answers
+     */
+    private <T> List<T> fanOut(ShardCall<T> call) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Shard shard : shards) {
+            futures.add(queryPool.submit(() -> call.apply(shard)));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            try {
+                results.add(getResult(future));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a shard", ex);
+            } catch (IllegalStateException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Result of a shard task. Unchecked exceptions thrown by the task are
+     * rethrown as they are, checked ones wrapped in an IllegalStateException.
+     */
+    private static <T> T getResult(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        queryPool.shutdown();
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 public class SkewSuffixArray {
     private final String text;
@@ -28,6 +29,10 @@ public class SkewSuffixArray {
         this.text = text;
     }
 
+    String getText() {
+        return text;
+    }
+
     /**
      * CSC 7300 - LSU
      * Written by the group.
@@ -37,6 +42,16 @@ public class SkewSuffixArray {
         System.out.println("\t\tComputing suffix array");
         int[] suffixArray = this.computeFromText(this.text);
 
+        return generateBwt(suffixArray);
+    }
+
+    /**
+     * CSC 7300 - LSU
+     * Written by the group.
+     * Same as generateBwt(), for callers that also need the suffix array
+     * (for example to keep SA samples) and have already computed it.
+     */
+    public String generateBwt(int[] suffixArray) {
         System.out.println("\t\tComputing BWT from suffix array");
         char[] charText = this.text.toCharArray();
         StringBuilder builder = new StringBuilder();
@@ -59,36 +74,75 @@ public class SkewSuffixArray {
      */
     public static int[] constructSuffixArray (int[] sequence, int K) {
         int n = sequence.length;
+        // Positions past the end read as the special character 0, so the
+        // sequence is not copied to append them
+        return constructSuffixArray(i -> i < n ? sequence[i] : 0, n, K);
+    }
+
+    /**
+     * CSC 7300 - LSU
+     * Written by the group.
+     * Suffix array of a text stored one byte per character. The first
+     * level reads the characters from the ByteText, where the code c stands
+     * for the symbol c + 1, so the text is never copied to an int[]; only
+     * the recursion on the triplet names, 2/3 of the length of the text,
+     * uses int[].
+     * @param text
+     * @return
+     */
+    public static int[] constructSuffixArray(ByteText text) {
+        byte[] codes = text.codes;
+        return constructSuffixArray(i -> symbol(codes, i), codes.length, text.alphabet.length);
+    }
+
+    /**
+     * Symbol at position i of the padded byte text
+     */
+    private static int symbol(byte[] codes, int i) {
+        return i < codes.length ? (codes[i] & 0xFF) + 1 : 0;
+    }
+
+    /**
+     * CSC 7300 - LSU
+     * Written by the group.
+     * The skew algorithm over any sequence of symbols, read through
+     * 'symbols' so that int[] and byte texts share one implementation.
+     * @param symbols	symbol at every position, 1 to K below n and the
+     * 					special character 0 from n to n + 2
+     * @param n			length of the sequence
+     * @param K			the maximum number of distinct characters
+     * @return resultSA	suffix array of the sequence
+     */
+    private static int[] constructSuffixArray(IntUnaryOperator symbols, int n, int K) {
         int n0 = (int) Math.ceil(n / 3.0);
         int n1 = (int) Math.ceil((n - 1) / 3.0);
         int n2 = (int) Math.ceil((n - 2) / 3.0);
         int tripletNumber = n0 + n2;
-
-        int[] sequence2 = null;
-
-        sequence2 = appendSpecialChars(sequence, sequence2);
+        // Length of the text with the special characters appended
+        int padded = n % 3 == 1 ? n + 3 : n + 2;
 
         int[] index = new int[tripletNumber];
-        for (int i = 0, j = 0; i < sequence2.length - 2; i++)
+        for (int i = 0, j = 0; i < padded - 2; i++)
             if (i % 3 != 0) index[j++] = i;
 
         // lexicographically sort triplets
-        int[] sortedTriplets = new int[index.length];
-        sortedTriplets = radixSort (sequence2, index, tripletNumber, K, 2);
-        sortedTriplets = radixSort (sequence2, sortedTriplets, tripletNumber, K, 1);
-        sortedTriplets = radixSort (sequence2, sortedTriplets, tripletNumber, K, 0);
+        int[] sortedTriplets = radixSort(symbols, index, tripletNumber, K, 2);
+        sortedTriplets = radixSort(symbols, sortedTriplets, tripletNumber, K, 1);
+        sortedTriplets = radixSort(symbols, sortedTriplets, tripletNumber, K, 0);
+        index = null;
 
         // name triplets
         int[] lexName = new int[tripletNumber];
         lexName[0] = 1;
-        boolean notUnique = nameTriplets(tripletNumber, sequence2, sortedTriplets, lexName);
+        boolean notUnique = nameTriplets(tripletNumber, symbols, sortedTriplets, lexName);
 
         // concatenate the triplet names in the right order
-        int[] lexNameSorted = new int[tripletNumber];
-        lexNameSorted = concatenateTripletNames(n0, tripletNumber, sortedTriplets, lexName);
+        int[] lexNameSorted = concatenateTripletNames(n0, tripletNumber, sortedTriplets, lexName);
+        sortedTriplets = null;
+        lexName = null;
 
-        // construct the suffix array
-        int[] SA = new int[tripletNumber];
+        // construct the suffix array of the names, recursively
+        int[] SA;
         if (notUnique) {
             int maximum = 0;
             for (int i = 0; i < lexNameSorted.length; i++) {
@@ -98,27 +152,47 @@ public class SkewSuffixArray {
             SA = constructSuffixArray(lexNameSorted, maximum);
         }
         else {
+            SA = new int[tripletNumber];
             for (int i = 0; i < tripletNumber; i++) {
                 SA[lexNameSorted[i] - 1] = i;
             }
         }
+        lexNameSorted = null;
 
         // transform SA to A12
         int[] A12 = new int[tripletNumber];
         transformToA12(n0, tripletNumber, SA, A12);
+        SA = null;
 
         // derive A0 from A12
         int[] A0 = new int[n0];
         deriveA0(tripletNumber, A12, A0);
-        A0 = radixSort (sequence2, A0, n0, K, 0);
+        A0 = radixSort(symbols, A0, n0, K, 0);
 
         // merge A12 and A0 into suffix array rezSA
         int[] resultSA = new int[n0 + tripletNumber - (n0 - n1)];
-        merge(n, tripletNumber, sequence2, A12, A0, resultSA);
+        merge(n, tripletNumber, symbols, A12, A0, resultSA);
 
         return resultSA;
     }
 
+    /**
+     * Index in the name order of the triplet at text position p, p % 3 != 0
+     */
+    private static int tripletIndex(int p, int n0) {
+        return p % 3 == 1 ? (p - 1) / 3 : n0 + (p - 2) / 3;
+    }
+
+    /**
+     * Rank of the triplet at text position p, 0 past the last triplet
+     */
+    private static int rank(int[] R12, int p, int n0, int n2) {
+        if (p % 3 == 1) {
+            return (p - 1) / 3 < n0 ? R12[(p - 1) / 3] : 0;
+        }
+        return (p - 2) / 3 < n2 ? R12[n0 + (p - 2) / 3] : 0;
+    }
+
     /**
      * This is a radix sort.
      * @param s2			initial string s with appended special characters
@@ -130,14 +204,22 @@ public class SkewSuffixArray {
      * @return result		sorted indexes
      */
     public static int[] radixSort(int[] s2, int[] index, int tripletNumber, int K, int offset) {
+        return radixSort(i -> s2[i], index, tripletNumber, K, offset);
+    }
+
+    /**
+     * radixSort over the symbols of any sequence, see
+     * constructSuffixArray(IntUnaryOperator, int, int)
+     */
+    private static int[] radixSort(IntUnaryOperator symbols, int[] index, int tripletNumber, int K, int offset) {
         int[] c = new int[K+1];
         int[] result = new int[tripletNumber];
         for (int i = 0; i < tripletNumber; i++)
-            c[s2[index[i] + offset]]++;
+            c[symbols.applyAsInt(index[i] + offset)]++;
         for (int i = 1; i <= K; i++)
             c[i] += c[i - 1];
         for (int i = tripletNumber - 1; i >= 0; i--)
-            result[--c[s2[index[i] + offset]]] = index[i];
+            result[--c[symbols.applyAsInt(index[i] + offset)]] = index[i];
         return result;
     }
 
@@ -152,10 +234,21 @@ public class SkewSuffixArray {
      * 							false if triplets are unique
      */
     public static boolean nameTriplets(int tripletNumber, int[] s2, int[] sortedTriplets, int[] lexName) {
+        return nameTriplets(tripletNumber, i -> s2[i], sortedTriplets, lexName);
+    }
+
+    /**
+     * nameTriplets over the symbols of any sequence, see
+     * constructSuffixArray(IntUnaryOperator, int, int)
+     */
+    private static boolean nameTriplets(int tripletNumber, IntUnaryOperator symbols, int[] sortedTriplets, int[] lexName) {
         int name = 1;
         boolean notUnique = false;
         for (int i = 1; i < tripletNumber; i++) {
-            if ((s2[sortedTriplets[i]] == s2[sortedTriplets[i-1]]) && (s2[sortedTriplets[i]+1] == s2[sortedTriplets[i-1]+1]) && (s2[sortedTriplets[i]+2] == s2[sortedTriplets[i-1]+2]))
+            int a = sortedTriplets[i];
+            int b = sortedTriplets[i-1];
+            if (symbols.applyAsInt(a) == symbols.applyAsInt(b) && symbols.applyAsInt(a+1) == symbols.applyAsInt(b+1)
+                    && symbols.applyAsInt(a+2) == symbols.applyAsInt(b+2))
                 notUnique = true;
             else
                 name++;
@@ -246,59 +339,52 @@ public class SkewSuffixArray {
      * @param resultSA			total suffix array of initial string s
      */
     public static void merge(int n, int tripletNumber, int[] s2, int[] A12, int[] A0, int[] resultSA) {
-        int[] R12 = new int[s2.length];
+        merge(n, tripletNumber, i -> s2[i], A12, A0, resultSA);
+    }
+
+    /**
+     * merge over the symbols of any sequence, see
+     * constructSuffixArray(IntUnaryOperator, int, int)
+     */
+    private static void merge(int n, int tripletNumber, IntUnaryOperator symbols, int[] A12, int[] A0, int[] resultSA) {
         int n0 = (int) Math.ceil(n / 3.0);
+        int n2 = tripletNumber - n0;
+        // Rank of every triplet, stored like the names: the triplets at
+        // 3k+1 first, then the ones at 3k+2, instead of by text position
+        int[] R12 = new int[tripletNumber];
 
         int index0 = 0;
         int index12 = 0;
         int m = 0;
         if (n % 3 == 1)
             index12 = 1;
-        boolean end = false;
 
         for (int i = 0; i < tripletNumber; i++)
-            R12[A12[i]] = i + 1;
-
-        for (int i = 0; i < tripletNumber + n0; i++) {
-            if (index0 == n0) {
-                while (index12 < tripletNumber) {
-                    resultSA[m++] = A12[index12];
-                    index12++;
-                }
-                end = true;
-            }
-            if (end) break;
-
-            if (index12 == tripletNumber) {
-                while (index0 < n0) {
-                    resultSA[m++] = A0[index0];
-                    index0++;
-                }
-                end = true;
-            }
-            if (end) break;
-
-            if (A12[index12] % 3 == 1) {
-                if (compare2(s2[A0[index0]], s2[A12[index12]], R12[A0[index0] + 1], R12[A12[index12] + 1])) {
-                    resultSA[m++] = A0[index0];
-                    index0++;
-                }
-                else {
-                    resultSA[m++] = A12[index12];
-                    index12++;
-                }
+            R12[tripletIndex(A12[i], n0)] = i + 1;
+
+        while (index0 < n0 && index12 < tripletNumber) {
+            int a = A0[index0];
+            int b = A12[index12];
+            boolean smaller;
+            if (b % 3 == 1)
+                smaller = compare2(symbols.applyAsInt(a), symbols.applyAsInt(b),
+                        rank(R12, a + 1, n0, n2), rank(R12, b + 1, n0, n2));
+            else
+                smaller = compare3(symbols.applyAsInt(a), symbols.applyAsInt(b), symbols.applyAsInt(a + 1), symbols.applyAsInt(b + 1),
+                        rank(R12, a + 2, n0, n2), rank(R12, b + 2, n0, n2));
+            if (smaller) {
+                resultSA[m++] = a;
+                index0++;
             }
             else {
-                if (compare3(s2[A0[index0]], s2[A12[index12]], s2[A0[index0] + 1], s2[A12[index12] + 1], R12[A0[index0] + 2], R12[A12[index12] + 2])) {
-                    resultSA[m++] = A0[index0];
-                    index0++;
-                }
-                else {
-                    resultSA[m++] = A12[index12];
-                    index12++;
-                }
+                resultSA[m++] = b;
+                index12++;
             }
         }
+        while (index12 < tripletNumber)
+            resultSA[m++] = A12[index12++];
+        while (index0 < n0)
+            resultSA[m++] = A0[index0++];
     }
 
     /**
@@ -385,17 +471,18 @@ public class SkewSuffixArray {
      * Changed return value to serve our purposes
      */
     private TextMetaData analyzeText(String text) {
-        char[] chars = text.toCharArray();
-        int[] s = new int[chars.length];
-        int minimum = 256;
-        for (int j = 0; j< chars.length; j++) {
-            s[j] = chars[j] + 1;
+        // Any character code works: the smallest one becomes 1,
+        // 0 is left for the padding of DC3
+        int[] s = new int[text.length()];
+        int minimum = Integer.MAX_VALUE;
+        for (int j = 0; j < s.length; j++) {
+            s[j] = text.charAt(j) + 1;
             if (s[j] < minimum)
                 minimum = s[j];
         }
         int maximum = 0;
-        for (int j = 0; j< chars.length; j++) {
-            s[j] = chars[j] + 2 - minimum;
+        for (int j = 0; j < s.length; j++) {
+            s[j] = s[j] + 1 - minimum;
             if (s[j] > maximum)
                 maximum = s[j];
         }
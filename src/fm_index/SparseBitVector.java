@@ -0,0 +1,60 @@
+package fm_index;
+
+import java.util.Arrays;
+
+/**
+ * Written by the group.
+ * Bitvector with very few set bits, stored as the sorted positions of its
+ * ones. Space depends on the number of ones, not on the length, which is
+ * what the run-length index needs for its run boundaries.
+ */
+public class SparseBitVector {
+
+    private int[] ones;
+    private int length;
+
+    /**
+     * @param ones Sorted positions of the set bits
+     * @param length Length of the bitvector
+     */
+    public SparseBitVector(int[] ones, int length) {
+        this.ones = ones;
+        this.length = length;
+    }
+
+    /**
+     * Number of set bits in positions [0, index)
+     * @param index
+     * @return
+     */
+    public int rank(int index) {
+        int found = Arrays.binarySearch(ones, index);
+        // binarySearch returns (-(insertion point) - 1) when index is not a one
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /**
+     * Position of the k-th (1-based) set bit, or the length of the
+     * bitvector when k is one past the last set bit.
+     * @param k
+     * @return
+     */
+    public int select(int k) {
+        if (k == ones.length + 1) {
+            return length;
+        }
+        return ones[k - 1];
+    }
+
+    public boolean get(int index) {
+        return Arrays.binarySearch(ones, index) >= 0;
+    }
+
+    public int numberOfOnes() {
+        return ones.length;
+    }
+
+    public int length() {
+        return length;
+    }
+}
@@ -0,0 +1,177 @@
+package fm_index;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Written by the group.
+ * Enumerates substrings of the text of an FMIndex by walking the tree of
+ * suffix ranges: the children of the range of X are the ranges of cX for
+ * every character c that precedes X somewhere, found with one
+ * WaveletTree.intervalSymbols call. Substrings are built right to left in
+ * a buffer and handed out as views of it, never stored, so the memory is
+ * one stack per thread whatever the number of substrings.
+ *
+ * The subtrees of the last character of the substrings are walked in
+ * parallel, in the common fork-join pool, so consumers must be thread
+ * safe. Substrings never contain the terminator.
+ */
+public class SubstringTraversal {
+
+    /**
+     * Receives the substrings of a traversal
+     */
+    @FunctionalInterface
+    public interface SubstringConsumer {
+        /**
+         * @param substring Only valid during the call, copy it to keep it
+         * @param count Number of occurrences in the text
+         */
+        void accept(CharSequence substring, int count);
+    }
+
+    FMIndex index;
+
+    public SubstringTraversal(FMIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Every distinct substring of length k with its number of occurrences,
+     * in no particular order
+     * @param k
+     * @param consumer
+     */
+    public void kmers(int k, SubstringConsumer consumer) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        traverse(k, 1, null, consumer);
+    }
+
+    /**
+     * k-mer frequency spectrum: how many distinct k-mers occur once,
+     * twice, and so on
+     * @param k
+     * @return Number of distinct k-mers by number of occurrences
+     */
+    public TreeMap<Integer, Long> kmerSpectrum(int k) {
+        ConcurrentHashMap<Integer, LongAdder> spectrum = new ConcurrentHashMap<>();
+        kmers(k, (kmer, count) -> spectrum.computeIfAbsent(count, key -> new LongAdder()).increment());
+        TreeMap<Integer, Long> result = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : spectrum.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * Every maximal repeat of at most 'maxLength' characters that occurs
+     * at least 'minCount' times: a substring whose occurrences are neither
+     * all preceded nor all followed by the same character, so it is not
+     * part of a longer substring that occurs as often. Finding the
+     * following characters needs the LcpArray, which is built on the
+     * first call, see FMIndex.maximalMatches.
+     * @param minCount At least 2
+     * @param maxLength
+     * @param consumer
+     */
+    public void maximalRepeats(int minCount, int maxLength, SubstringConsumer consumer) {
+        if (minCount < 2 || maxLength < 1) {
+            throw new IllegalArgumentException("A repeat occurs at least twice and has at least one character");
+        }
+        traverse(maxLength, minCount, index.matchingStatistics().lcp, consumer);
+    }
+
+    /**
+     * @param maxDepth Longest substring
+     * @param minCount Ranges with fewer rows are not walked
+     * @param lcp Report maximal repeats at every depth if not null,
+     *            otherwise the substrings of length maxDepth
+     */
+    private void traverse(int maxDepth, int minCount, LcpArray lcp, SubstringConsumer consumer) {
+        int sigma = index.wt.root.alphabet.length;
+        char[] chars = new char[sigma];
+        int[] startRanks = new int[sigma];
+        int[] endRanks = new int[sigma];
+        int found = index.wt.intervalSymbols(0, index.n, chars, startRanks, endRanks);
+        List<int[]> roots = new ArrayList<>();
+        for (int i = 0; i < found; i++) {
+            int start = index.c.occurrence.get(chars[i]);
+            if (chars[i] != FMIndex.TERMINATOR && endRanks[i] >= minCount) {
+                roots.add(new int[]{start, start + endRanks[i], chars[i]});
+            }
+        }
+        roots.parallelStream().forEach(root ->
+                walk(root[0], root[1], (char) root[2], maxDepth, minCount, lcp, consumer));
+    }
+
+    /**
+     * Depth first walk of one subtree with an explicit stack. When a node
+     * is taken off the stack, the nodes walked since it was pushed were all
+     * deeper, so the path buffer still holds its suffix.
+     */
+    private void walk(int s, int e, char first, int maxDepth, int minCount, LcpArray lcp,
+            SubstringConsumer consumer) {
+        int sigma = index.wt.root.alphabet.length;
+        char[] path = new char[maxDepth];
+        char[] chars = new char[sigma];
+        int[] startRanks = new int[sigma];
+        int[] endRanks = new int[sigma];
+        // Entries of four ints: start row, end row (exclusive), depth, character
+        int[] stack = new int[4 * (sigma + 1)];
+        int top = 0;
+        stack[top++] = s;
+        stack[top++] = e;
+        stack[top++] = 1;
+        stack[top++] = first;
+
+        while (top > 0) {
+            char c = (char) stack[--top];
+            int depth = stack[--top];
+            e = stack[--top];
+            s = stack[--top];
+            path[maxDepth - depth] = c;
+            CharSequence substring = CharBuffer.wrap(path, maxDepth - depth, depth);
+
+            if (lcp == null && depth == maxDepth) {
+                consumer.accept(substring, e - s);
+                continue;
+            }
+            int found = index.wt.intervalSymbols(s, e, chars, startRanks, endRanks);
+            if (lcp != null) {
+                // Left maximal: preceded by two characters, or the terminator
+                // of the row of the text start. Right maximal: two rows
+                // share no more than 'depth' characters.
+                boolean leftMaximal = found > 1 || chars[0] == FMIndex.TERMINATOR;
+                if (leftMaximal && lcp.nextSmaller(s + 1, depth + 1) < e) {
+                    consumer.accept(substring, e - s);
+                }
+                if (depth == maxDepth) {
+                    continue;
+                }
+            }
+
+            if (top + 4 * found > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(2 * stack.length, top + 4 * found));
+            }
+            // Pushed in reverse, so the smaller characters come off first
+            for (int i = found - 1; i >= 0; i--) {
+                if (chars[i] == FMIndex.TERMINATOR || endRanks[i] - startRanks[i] < minCount) {
+                    continue;
+                }
+                int start = index.c.occurrence.get(chars[i]);
+                stack[top++] = start + startRanks[i];
+                stack[top++] = start + endRanks[i];
+                stack[top++] = depth + 1;
+                stack[top++] = chars[i];
+            }
+        }
+    }
+}
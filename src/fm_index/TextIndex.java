@@ -0,0 +1,26 @@
+package fm_index;
+
+/**
+ * Written by the group.
+ * Query API shared by the different index layouts, so callers can swap
+ * the plain FM-index for a run-length one without changing their code.
+ */
+public interface TextIndex {
+
+    /**
+     * Backward search for 'query'.
+     * @param query
+     * @return The 1-based range {s, e} of matching rows, or {1, 0} if there is no match
+     */
+    int[] search(String query);
+
+    /**
+     * Text positions of every occurrence of 'query', in suffix array order.
+     * The indexed text must end with a unique terminator that is smaller than
+     * every other character (such as '$'), otherwise LF is not defined on the
+     * row of the first suffix.
+     * @param query
+     * @return
+     */
+    int[] locate(String query);
+}
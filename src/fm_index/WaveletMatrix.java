@@ -0,0 +1,131 @@
+package fm_index;
+
+import java.util.Arrays;
+
+/**
+ * Written by the group.
+ * Wavelet matrix over a sequence of non-negative ints, for alphabets too
+ * large for the char based WaveletTree, such as document numbers or word
+ * ids. There is one bitvector per bit of the values, highest bit first,
+ * and every level holds the bits of the values sorted stably by the bits
+ * of the levels above, zeros first. The positions of the values sharing
+ * a prefix of bits are then one range in every level, and a range of one
+ * level maps to the next with two ranks, so rank and access take one
+ * rank per bit whatever the number of distinct values.
+ *
+ * After the last level equal values are together, so rank only follows
+ * the position and subtracts where the value starts there, kept for
+ * every value up to the largest one.
+ */
+public class WaveletMatrix {
+
+    // levels[l] holds bit (bits - 1 - l) of every value, in the order of
+    // level l; zeros[l] is its number of zeros
+    Block[] levels;
+    int[] zeros;
+    int bits;
+    int length;
+    // Position of the first occurrence of every value after the last
+    // level, -1 for the values that do not occur
+    int[] lastLevelStart;
+
+    /**
+     * @param values Not modified
+     * @param maxValue Largest value, which sets the number of levels
+     * @param blockSize
+     */
+    public WaveletMatrix(int[] values, int maxValue, int blockSize) {
+        this.length = values.length;
+        this.bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+        this.levels = new Block[bits];
+        this.zeros = new int[bits];
+        int[] current = values.clone();
+        int[] next = new int[length];
+        for (int l = 0; l < bits; l++) {
+            int bit = bits - 1 - l;
+            boolean[] bitvector = new boolean[length];
+            int zeroCount = 0;
+            for (int i = 0; i < length; i++) {
+                bitvector[i] = ((current[i] >>> bit) & 1) != 0;
+                if (!bitvector[i]) {
+                    zeroCount++;
+                }
+            }
+            levels[l] = new Block(bitvector, blockSize);
+            zeros[l] = zeroCount;
+            // Stable partition, zeros first, for the next level
+            int z = 0;
+            int o = zeroCount;
+            for (int i = 0; i < length; i++) {
+                next[bitvector[i] ? o++ : z++] = current[i];
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+        }
+        lastLevelStart = new int[maxValue + 1];
+        Arrays.fill(lastLevelStart, -1);
+        for (int i = length - 1; i >= 0; i--) {
+            lastLevelStart[current[i]] = i;
+        }
+    }
+
+    /**
+     * Value at 'index'
+     * @param index
+     * @return
+     */
+    public int access(int index) {
+        int value = 0;
+        for (int l = 0; l < bits; l++) {
+            Block level = levels[l];
+            int zerosBefore = level.getCount(index, false);
+            if (level.get(index)) {
+                value = (value << 1) | 1;
+                index = zeros[l] + index - zerosBefore;
+            } else {
+                value <<= 1;
+                index = zerosBefore;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Number of occurrences of 'value' in positions [0, index)
+     * @param value
+     * @param index
+     * @return
+     */
+    public int rank(int value, int index) {
+        if (value < 0 || value >= lastLevelStart.length || lastLevelStart[value] < 0) {
+            return 0;
+        }
+        for (int l = 0; l < bits; l++) {
+            int zerosBefore = levels[l].getCount(index, false);
+            if (((value >>> (bits - 1 - l)) & 1) != 0) {
+                index = zeros[l] + index - zerosBefore;
+            } else {
+                index = zerosBefore;
+            }
+        }
+        return index - lastLevelStart[value];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Heap footprint in bytes, see MemoryReport
+     */
+    public long sizeInBytes() {
+        // levels, zeros, lastLevelStart; bits, length
+        long bytes = MemoryReport.objectBytes(3, 8) + MemoryReport.arrayBytes(levels.length, 4)
+                + MemoryReport.arrayBytes(zeros.length, 4) + MemoryReport.arrayBytes(lastLevelStart.length, 4);
+        for (Block level : levels) {
+            bytes += level.sizeInBytes();
+        }
+        return bytes;
+    }
+}
@@ -1,7 +1,8 @@
 package fm_index;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  *
@@ -12,54 +13,204 @@ public class WaveletTree {
     Node root;
     String s;
     int blockSize;
+    RankLayout layout;
+    
+    // Nodes shorter than this build their subtrees on the calling thread
+    static final int PARALLEL_CUTOFF = 1 << 16;
     
     public WaveletTree(String s, int blockSize) {
+        this(s, blockSize, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Written by the group.
+     * Build the tree with the threads of 'pool'. The two subtrees of a node
+     * are independent, so large nodes build them as separate fork-join tasks.
+     * @param s
+     * @param blockSize
+     * @param pool 
+     */
+    public WaveletTree(String s, int blockSize, ForkJoinPool pool) {
+        this(s, RankLayout.uniform(blockSize), pool);
+    }
+    
+    /**
+     * Written by the group.
+     * Build the tree with the block size 'layout' gives every node.
+     * @param s
+     * @param layout
+     * @param pool 
+     */
+    public WaveletTree(String s, RankLayout layout, ForkJoinPool pool) {
         this.s = s;
-        this.blockSize = blockSize;
+        this.layout = layout;
+        this.blockSize = layout.baseBlockSize();
 
-        // TODO: extract alphabet and pass to the node?
-        // String alphabet = this.extractAlphabet(s);
-
-        root = constructTree(s, new Node(s, blockSize));
+        char[] chars = s.toCharArray();
+        char[] alphabet = Node.alphabetOf(chars);
+        root = pool.invoke(new BuildTask(chars, alphabet));
     }
-
+    
     /**
      * Written by the group.
+     * Build the tree over a text stored one byte per character. The nodes
+     * split byte arrays instead of char arrays, and the text is not kept
+     * as a String, so 's' is null.
      * @param s
-     * @return
-     * TODO
+     * @param layout
+     * @param pool 
      */
-//    private String extractAlphabet(String s) {
-//
-//    }
+    public WaveletTree(ByteText s, RankLayout layout, ForkJoinPool pool) {
+        this.layout = layout;
+        this.blockSize = layout.baseBlockSize();
+        root = pool.invoke(new ByteBuildTask(s.codes, s.alphabet, 0));
+    }
+    
+    /**
+     * Fork-join task that builds the subtree of one node
+     */
+    private class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        private final char[] s;
+        private final char[] alphabet;
+        
+        BuildTask(char[] s, char[] alphabet) {
+            this.s = s;
+            this.alphabet = alphabet;
+        }
+        
+        @Override
+        protected Node compute() {
+            return constructTree(s, alphabet);
+        }
+    }
+    
+    /**
+     * Fork-join task that builds the subtree of one node over byte codes
+     */
+    private class ByteBuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        private final byte[] s;
+        private final char[] alphabet;
+        private final int firstCode;
+        
+        ByteBuildTask(byte[] s, char[] alphabet, int firstCode) {
+            this.s = s;
+            this.alphabet = alphabet;
+            this.firstCode = firstCode;
+        }
+        
+        @Override
+        protected Node compute() {
+            return constructTree(s, alphabet, firstCode);
+        }
+    }
     
     /**
      * Construct a wavelet tree
-     * @param s The string to use to initialize 'node' (root)
-     * @param node The node that roots the tree
+     * @param s The string to use to initialize the node that roots the tree
+     * @param alphabet The sorted alphabet of 's'
      * @return 
      */
-    private Node constructTree(String s, Node node) {
-        if(!(countLetters(s) <= 2)){
-   
-            String sLeft = "";
-            String sRight = "";
-
-            for (int i = 0; i < s.length(); i++) {
-                if (node.getEncoding(s.charAt(i))) {
-                    sRight += s.charAt(i);
-                }
-                else
-                    sLeft += s.charAt(i);
+    private Node constructTree(char[] s, char[] alphabet) {
+        Node node = new Node(s, alphabet, layout.blockSizeFor(alphabet));
+        if(alphabet.length > 2){
+            // The node encodes the first half of its alphabet as 0
+            int half = alphabet.length / 2;
+            char[] leftAlphabet = Arrays.copyOfRange(alphabet, 0, half);
+            char[] rightAlphabet = Arrays.copyOfRange(alphabet, half, alphabet.length);
+            
+            char[] sLeft = new char[node.getBlockCount(s.length, false)];
+            char[] sRight = new char[s.length - sLeft.length];
+            split(s, rightAlphabet[0], node, sLeft, sRight);
+            
+            if (s.length >= PARALLEL_CUTOFF) {
+                BuildTask leftTask = new BuildTask(sLeft, leftAlphabet);
+                leftTask.fork();
+                node.right = constructTree(sRight, rightAlphabet);
+                node.left = leftTask.join();
+            } else {
+                node.left = constructTree(sLeft, leftAlphabet);
+                node.right = constructTree(sRight, rightAlphabet);
             }
+        }
+        return node;
+    }
+    
+    /**
+     * Same as constructTree(char[], char[]) over byte codes
+     * @param s
+     * @param alphabet The sorted alphabet of 's'
+     * @param firstCode Code of alphabet[0]
+     * @return 
+     */
+    private Node constructTree(byte[] s, char[] alphabet, int firstCode) {
+        Node node = new Node(s, alphabet, firstCode, layout.blockSizeFor(alphabet));
+        if(alphabet.length > 2){
+            int half = alphabet.length / 2;
+            char[] leftAlphabet = Arrays.copyOfRange(alphabet, 0, half);
+            char[] rightAlphabet = Arrays.copyOfRange(alphabet, half, alphabet.length);
             
-            node.left = constructTree(sLeft, new Node(sLeft, blockSize));
-            node.right = constructTree(sRight, new Node(sRight, blockSize));
+            byte[] sLeft = new byte[node.getBlockCount(s.length, false)];
+            byte[] sRight = new byte[s.length - sLeft.length];
+            split(s, firstCode + half, node, sLeft, sRight);
             
+            if (s.length >= PARALLEL_CUTOFF) {
+                ByteBuildTask leftTask = new ByteBuildTask(sLeft, leftAlphabet, firstCode);
+                leftTask.fork();
+                node.right = constructTree(sRight, rightAlphabet, firstCode + half);
+                node.left = leftTask.join();
+            } else {
+                node.left = constructTree(sLeft, leftAlphabet, firstCode);
+                node.right = constructTree(sRight, rightAlphabet, firstCode + half);
+            }
         }
         return node;
     }
     
+    /**
+     * Same as split(char[], ...) over byte codes
+     */
+    private void split(byte[] s, int splitCode, Node node, byte[] sLeft, byte[] sRight) {
+        int numberChunks = ParallelRanges.numberChunks(s.length, ParallelRanges.CHUNK_SIZE);
+        ParallelRanges.forEachChunk(numberChunks, chunk -> {
+            int start = chunk * ParallelRanges.CHUNK_SIZE;
+            int end = Math.min(s.length, start + ParallelRanges.CHUNK_SIZE);
+            int left = node.getBlockCount(start, false);
+            int right = start - left;
+            for (int i = start; i < end; i++) {
+                if ((s[i] & 0xFF) >= splitCode) {
+                    sRight[right++] = s[i];
+                } else {
+                    sLeft[left++] = s[i];
+                }
+            }
+        });
+    }
+    
+    /**
+     * Stable partition of 's' into the characters smaller than 'split',
+     * which the node encodes as 0, and the rest. Every chunk finds where its
+     * characters go from the rank of its first position, so the chunks can
+     * be copied in parallel.
+     */
+    private void split(char[] s, char split, Node node, char[] sLeft, char[] sRight) {
+        int numberChunks = ParallelRanges.numberChunks(s.length, ParallelRanges.CHUNK_SIZE);
+        ParallelRanges.forEachChunk(numberChunks, chunk -> {
+            int start = chunk * ParallelRanges.CHUNK_SIZE;
+            int end = Math.min(s.length, start + ParallelRanges.CHUNK_SIZE);
+            int left = node.getBlockCount(start, false);
+            int right = start - left;
+            for (int i = start; i < end; i++) {
+                if (s[i] >= split) {
+                    sRight[right++] = s[i];
+                } else {
+                    sLeft[left++] = s[i];
+                }
+            }
+        });
+    }
+    
     /**
      * Rank method that returns the number of occurrences of 'c' within the range of (0, index)
      * @param c
@@ -101,26 +252,135 @@ public class WaveletTree {
     
     
     /**
-     * Counts the number of letters that are present in the string 's'
-     * @param s The string to count the letters on
+     * Written by the group.
+     * Every distinct character of the sequence in [start, end), with its
+     * rank at both ends, in increasing order. Only the subtrees that have
+     * characters in the range are visited, so d distinct characters cost
+     * O(d log sigma) node counts instead of two ranks for every character
+     * of the alphabet.
+     * @param start
+     * @param end
+     * @param chars Gets the characters, needs room for the whole alphabet
+     * @param startRanks Gets rank(chars[i], start)
+     * @param endRanks Gets rank(chars[i], end)
+     * @return The number of distinct characters
+     */
+    public int intervalSymbols(int start, int end, char[] chars, int[] startRanks, int[] endRanks){
+        if (start >= end) {
+            return 0;
+        }
+        return intervalSymbols(root, start, end, chars, startRanks, endRanks, 0);
+    }
+
+    private int intervalSymbols(Node node, int start, int end, char[] chars, int[] startRanks,
+            int[] endRanks, int found){
+        int zerosStart = node.getBlockCount(start, false);
+        int zerosEnd = node.getBlockCount(end, false);
+        if (zerosEnd > zerosStart) {
+            found = intervalChild(node, false, zerosStart, zerosEnd, chars, startRanks, endRanks, found);
+        }
+        int onesStart = start - zerosStart;
+        int onesEnd = end - zerosEnd;
+        if (onesEnd > onesStart) {
+            found = intervalChild(node, true, onesStart, onesEnd, chars, startRanks, endRanks, found);
+        }
+        return found;
+    }
+
+    private int intervalChild(Node node, boolean encoding, int start, int end, char[] chars,
+            int[] startRanks, int[] endRanks, int found){
+        Node child = encoding ? node.right : node.left;
+        if (child != null) {
+            return intervalSymbols(child, start, end, chars, startRanks, endRanks, found);
+        }
+        chars[found] = node.getLeafChar(encoding);
+        startRanks[found] = start;
+        endRanks[found] = end;
+        return found + 1;
+    }
+
+    /**
+     * Written by the group.
+     * Select method that returns the position of the k-th (1-based) occurrence
+     * of 'c' in the sequence, or -1 if 'c' occurs fewer than k times.
+     * @param c
+     * @param k
      * @return 
      */
-    private int countLetters(String s){
-        HashMap<Character, Integer> letters = new HashMap<Character, Integer>();
-        char[] chars = s.toCharArray();
+    public int select(char c, int k){
+        if (!root.alphabetMap.containsKey(c)) {
+            return -1;
+        }
+        return iSelect(c, k, root);
+    }
 
-        for(int i=0; i<chars.length;i++)
-        {
-            if(!letters.containsKey(chars[i]))
-            {
-                letters.put(chars[i], 1);
+    /**
+     * Internal select method. Descends to the leaf that holds 'c' and maps
+     * the occurrence back up through the bitvector of every node on the path.
+     * @param c
+     * @param k
+     * @param node
+     * @return 
+     */
+    private int iSelect(char c, int k, Node node){
+        boolean encoding = node.getEncoding(c);
+        Node child = encoding ? node.right : node.left;
+        if (child != null) {
+            // Position of the occurrence inside the child, turned into
+            // the occurrence number of 'encoding' in this node.
+            int childPosition = iSelect(c, k, child);
+            if (childPosition == -1) {
+                return -1;
             }
-            letters.put(chars[i], letters.get(chars[i])+1);
+            k = childPosition + 1;
         }
-
-        return letters.size();
+        return node.getBlockSelect(encoding, k);
     }
 
+    /**
+     * Written by the group.
+     * Access method that returns the character at 'index' of the sequence,
+     * using one rank per level instead of one rank pair per alphabet character.
+     * @param index
+     * @return 
+     */
+    public char access(int index){
+        Node node = root;
+        while (true) {
+            boolean encoding = node.getBit(index);
+            Node child = encoding ? node.right : node.left;
+            if (child == null) {
+                return node.getLeafChar(encoding);
+            }
+            index = node.getBlockCount(index, encoding);
+            node = child;
+        }
+    }
+    
+    /**
+     * Written by the group.
+     * Add the tree to 'report': every node, a total per level, and the
+     * string the tree was built from, which it keeps a reference to.
+     * @param report
+     * @param depth 
+     */
+    void addTo(MemoryReport report, int depth) {
+        // root, s, layout; blockSize
+        report.add(depth, "WaveletTree", MemoryReport.objectBytes(3, 4));
+        report.addString(depth + 1, "WaveletTree.s (retained BW Text)", s);
+        long[] levelBytes = new long[height(root)];
+        root.addTo(report, depth + 1, 0, levelBytes);
+        for (int level = 0; level < levelBytes.length; level++) {
+            report.addSubtotal(depth + 1, String.format("level %d", level), levelBytes[level]);
+        }
+    }
+    
+    private static int height(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        return 1 + Math.max(height(node.left), height(node.right));
+    }
     
     /**
      * Print the wavelet tree in order
@@ -131,8 +391,8 @@ public class WaveletTree {
             inOrderPrint(node.left);
         }
         
-        for (int i = 0; i < node.bitVector.length; i++) {
-            System.out.print(node.bitVector[i] ? 1 : 0);
+        for (int i = 0; i < node.length(); i++) {
+            System.out.print(node.getBit(i) ? 1 : 0);
         }
         System.out.println("");
         
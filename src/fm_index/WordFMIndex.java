@@ -0,0 +1,229 @@
+package fm_index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Written by the group.
+ * FM-index over the words of a natural language text instead of its
+ * characters, for whole word phrase queries: a phrase of k words takes k
+ * backward search steps however long the words are, and only matches
+ * whole words.
+ *
+ * Words are maximal runs of letters and digits; everything between them
+ * is ignored, in the text and in the queries. Every distinct word gets an
+ * id, 2 and up in lexicographic order, and 1 is the terminator at the end
+ * of the sequence of ids, which is suffix sorted with
+ * SkewSuffixArray.constructSuffixArray(int[], int). The vocabulary can be
+ * far larger than a char, so the BWT is kept in a WaveletMatrix.
+ *
+ * locate reports character offsets in the text: the suffix array is
+ * sampled over word positions like FMIndex does, and the offset of every
+ * word is kept in a PackedArray.
+ */
+public class WordFMIndex {
+
+    static final int TERMINATOR_ID = 1;
+    static final int FIRST_WORD_ID = 2;
+
+    // Distinct words in increasing order, word i has id i + FIRST_WORD_ID
+    String[] vocabulary;
+    // Number of ids, the words and the terminator
+    int n;
+    // Character offset of every word of the text
+    PackedArray wordOffsets;
+    // c[id] is the number of ids smaller than id in the sequence
+    int[] c;
+    WaveletMatrix bwt;
+    // Rows whose suffix array value is sampled, and the values
+    Block sampledRows;
+    PackedArray saSamples;
+
+    public WordFMIndex(String text, int blockSize) {
+        System.out.println("\tTokenizing");
+        int[] bounds = tokenize(text);
+        int words = bounds.length / 2;
+        HashMap<String, Integer> ids = new HashMap<>();
+        for (int w = 0; w < words; w++) {
+            ids.putIfAbsent(text.substring(bounds[2 * w], bounds[2 * w + 1]), 0);
+        }
+        vocabulary = ids.keySet().toArray(new String[0]);
+        Arrays.sort(vocabulary);
+        for (int i = 0; i < vocabulary.length; i++) {
+            ids.put(vocabulary[i], i + FIRST_WORD_ID);
+        }
+
+        n = words + 1;
+        int[] sequence = new int[n];
+        wordOffsets = new PackedArray(words, PackedArray.widthFor(Math.max(0, text.length() - 1)));
+        for (int w = 0; w < words; w++) {
+            sequence[w] = ids.get(text.substring(bounds[2 * w], bounds[2 * w + 1]));
+            wordOffsets.set(w, bounds[2 * w]);
+        }
+        sequence[words] = TERMINATOR_ID;
+        bounds = null;
+        ids = null;
+        int maxId = vocabulary.length + FIRST_WORD_ID - 1;
+
+        System.out.println("\tComputing suffix array");
+        int[] suffixArray = SkewSuffixArray.constructSuffixArray(sequence, maxId);
+        int[] lastColumn = new int[n];
+        c = new int[maxId + 2];
+        for (int row = 0; row < n; row++) {
+            lastColumn[row] = sequence[suffixArray[row] == 0 ? n - 1 : suffixArray[row] - 1];
+            c[sequence[row] + 1]++;
+        }
+        for (int id = 1; id < c.length; id++) {
+            c[id] += c[id - 1];
+        }
+        sequence = null;
+
+        System.out.println("\tSampling suffix array");
+        boolean[] sampled = new boolean[n];
+        int count = 0;
+        for (int row = 0; row < n; row++) {
+            if (suffixArray[row] % FMIndex.SA_SAMPLE_RATE == 0 || lastColumn[row] == TERMINATOR_ID) {
+                sampled[row] = true;
+                count++;
+            }
+        }
+        saSamples = new PackedArray(count, PackedArray.widthFor(n - 1));
+        count = 0;
+        for (int row = 0; row < n; row++) {
+            if (sampled[row]) {
+                saSamples.set(count++, suffixArray[row]);
+            }
+        }
+        sampledRows = new Block(sampled, blockSize);
+        suffixArray = null;
+
+        System.out.println("\tCreating wavelet matrix");
+        bwt = new WaveletMatrix(lastColumn, maxId, blockSize);
+    }
+
+    /**
+     * Start and end offsets of every word of 'text'
+     * @param text
+     * @return {start0, end0, start1, end1, ...}
+     */
+    static int[] tokenize(String text) {
+        int[] bounds = new int[16];
+        int size = 0;
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == text.length()) {
+                break;
+            }
+            int start = i;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (size + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+            }
+            bounds[size++] = start;
+            bounds[size++] = i;
+        }
+        return Arrays.copyOf(bounds, size);
+    }
+
+    /**
+     * Id of 'word', or -1 if the text does not contain it
+     */
+    int id(String word) {
+        int index = Arrays.binarySearch(vocabulary, word);
+        return index < 0 ? -1 : index + FIRST_WORD_ID;
+    }
+
+    /**
+     * Backward search for the words of 'phrase', one step per word
+     * @param phrase
+     * @return The 1-based range {s, e} of matching rows, or {1, 0} if there is no match
+     */
+    public int[] search(String phrase) {
+        int[] bounds = tokenize(phrase);
+        if (bounds.length == 0) {
+            throw new IllegalArgumentException("The phrase has no words");
+        }
+        int s = 1;
+        int e = n;
+        for (int w = bounds.length / 2 - 1; w >= 0; w--) {
+            int id = id(phrase.substring(bounds[2 * w], bounds[2 * w + 1]));
+            if (id < 0) {
+                return new int[]{1, 0};
+            }
+            s = c[id] + bwt.rank(id, s - 1) + 1;
+            e = c[id] + bwt.rank(id, e);
+            if (s > e) {
+                return new int[]{1, 0};
+            }
+        }
+        return new int[]{s, e};
+    }
+
+    /**
+     * Number of occurrences of 'phrase' as whole words
+     * @param phrase
+     * @return
+     */
+    public int count(String phrase) {
+        int[] range = search(phrase);
+        return Math.max(0, range[1] - range[0] + 1);
+    }
+
+    /**
+     * Character offsets of the first word of every occurrence of
+     * 'phrase', in suffix array order
+     * @param phrase
+     * @return
+     */
+    public int[] locate(String phrase) {
+        int[] range = search(phrase);
+        int[] offsets = new int[Math.max(0, range[1] - range[0] + 1)];
+        for (int row = range[0] - 1; row < range[1]; row++) {
+            offsets[row - range[0] + 1] = wordOffsets.getInt(locateRow(row));
+        }
+        return offsets;
+    }
+
+    /**
+     * Word position of the suffix of 'row'
+     */
+    int locateRow(int row) {
+        int steps = 0;
+        while (!sampledRows.get(row)) {
+            int id = bwt.access(row);
+            row = c[id] + bwt.rank(id, row);
+            steps++;
+        }
+        return saSamples.getInt(sampledRows.getCount(row, true)) + steps;
+    }
+
+    /**
+     * Number of words of the text
+     * @return
+     */
+    public int words() {
+        return n - 1;
+    }
+
+    public MemoryReport memoryReport() {
+        MemoryReport report = new MemoryReport();
+        // vocabulary, wordOffsets, c, bwt, sampledRows, saSamples; n
+        report.add(0, "WordFMIndex", MemoryReport.objectBytes(6, 4));
+        long vocabularyBytes = MemoryReport.arrayBytes(vocabulary.length, 4);
+        for (String word : vocabulary) {
+            vocabularyBytes += MemoryReport.stringBytes(word);
+        }
+        report.add(1, "vocabulary", vocabularyBytes);
+        report.add(1, "C table", MemoryReport.arrayBytes(c.length, 4));
+        report.add(1, "wavelet matrix", bwt.sizeInBytes());
+        report.add(1, "SA samples", saSamples.sizeInBytes());
+        report.add(1, "sampled rows", sampledRows.sizeInBytes());
+        report.add(1, "word offsets", wordOffsets.sizeInBytes());
+        return report;
+    }
+}